@@ -10,8 +10,11 @@ import com.kamikazejam.syncengine.base.mode.SyncMode;
 import com.kamikazejam.syncengine.command.SyncEngineCommand;
 import com.kamikazejam.syncengine.connections.redis.RedisService;
 import com.kamikazejam.syncengine.connections.storage.StorageService;
+import com.kamikazejam.syncengine.mode.profile.handshake.combined.CombinedHandshakeService;
 import com.kamikazejam.syncengine.mode.profile.handshake.swap.NetworkSwapService;
 import com.kamikazejam.syncengine.mode.profile.listener.ProfileListener;
+import com.kamikazejam.syncengine.network.player.actions.PlayerActionService;
+import com.kamikazejam.syncengine.network.presence.PresenceDirectory;
 import com.kamikazejam.syncengine.network.profile.service.NetworkProfileService;
 import com.kamikazejam.syncengine.server.ServerService;
 import lombok.Getter;
@@ -170,10 +173,22 @@ public class EngineSource {
         return syncMode.getSwapService();
     }
 
+    public static @NotNull CombinedHandshakeService getHandshakeService() {
+        return syncMode.getHandshakeService();
+    }
+
     public static @NotNull NetworkProfileService getNetworkService() {
         return syncMode.getNetworkService();
     }
 
+    public static @Nullable PresenceDirectory getPresenceDirectory() {
+        return syncMode.getPresenceDirectory();
+    }
+
+    public static @NotNull PlayerActionService getActionService() {
+        return syncMode.getActionService();
+    }
+
     public static @NotNull StorageService getStorageService() {
         return storageMode.getStorageService();
     }
@@ -3,7 +3,9 @@ package com.kamikazejam.syncengine;
 import com.google.common.base.Preconditions;
 import com.kamikazejam.syncengine.base.Cache;
 import com.kamikazejam.syncengine.base.SyncCache;
+import com.kamikazejam.syncengine.base.cache.ReadOptions;
 import lombok.Getter;
+import lombok.Setter;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.jetbrains.annotations.NotNull;
 
@@ -21,6 +23,11 @@ public class SyncRegistration {
      */
     private final String databaseName;
     private final String dbNameShort;
+    /**
+     * The default read routing for this plugin's caches (MongoDB only), see {@link ReadOptions}
+     */
+    @Setter
+    private @NotNull ReadOptions readOptions = ReadOptions.primary();
 
     // package-private because SyncEngine is the only one allowed to create this
     SyncRegistration(@NotNull JavaPlugin plugin, @NotNull String dbNameShort) {
@@ -1,10 +1,13 @@
 package com.kamikazejam.syncengine.base;
 
 import com.kamikazejam.syncengine.SyncRegistration;
+import com.kamikazejam.syncengine.base.cache.ReadOptions;
 import com.kamikazejam.syncengine.base.cache.SyncLoader;
 import com.kamikazejam.syncengine.base.error.LoggerService;
 import com.kamikazejam.syncengine.base.exception.DuplicateCacheException;
 import com.kamikazejam.syncengine.base.index.IndexedField;
+import com.kamikazejam.syncengine.base.query.Aggregation;
+import com.kamikazejam.syncengine.base.query.SyncQuery;
 import com.kamikazejam.syncengine.base.store.StoreDatabase;
 import com.kamikazejam.syncengine.base.store.StoreLocal;
 import com.kamikazejam.syncengine.base.store.StoreMethods;
@@ -19,10 +22,13 @@ import org.bukkit.plugin.Plugin;
 import org.jetbrains.annotations.*;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 /**
  * A Cache holds Sync objects and manages their retrieval, caching, and saving.
@@ -57,6 +63,53 @@ public interface Cache<K, X extends Sync<K>> extends Service {
      */
     Optional<X> getFromDatabase(@NotNull K key, boolean cacheSync);
 
+    /**
+     * Retrieve multiple Syncs, serving cached Syncs first and loading the rest from the database in bulk.
+     * Keys that don't exist in either are absent from the result. (Does not create Syncs)
+     *
+     * @param cacheSyncs If we should cache the Syncs loaded from the database.
+     * @return The Syncs that were found, keyed by id.
+     */
+    @Blocking
+    @NotNull
+    Map<K, X> getMany(@NotNull Collection<K> keys, boolean cacheSyncs);
+
+    /**
+     * Retrieve the Syncs matching a query, evaluated by the database (see {@link SyncQuery}).
+     * Syncs that are already cached are returned as the cached instance.
+     *
+     * @param cacheSyncs If we should cache the Syncs loaded from the database.
+     * @return The matching Syncs, in the order requested by the query.
+     */
+    @Blocking
+    @NotNull
+    List<X> find(@NotNull SyncQuery query, boolean cacheSyncs);
+
+    /**
+     * @return How many Syncs in the database match a query.
+     */
+    @Blocking
+    long count(@NotNull SyncQuery query);
+
+    /**
+     * Aggregate a numeric field over the Syncs matching a query, computed by the database.
+     *
+     * @param valueField The field to aggregate (ignored for {@link Aggregation#COUNT})
+     * @return The result, or null if no Syncs matched.
+     */
+    @Blocking
+    @Nullable
+    Double aggregate(@NotNull SyncQuery query, @NotNull Aggregation aggregation, @Nullable String valueField);
+
+    /**
+     * Aggregate a numeric field over the Syncs matching a query, grouped by the value of groupField.
+     *
+     * @return The result of each group, keyed by the group value.
+     */
+    @Blocking
+    @NotNull
+    Map<Object, Double> groupBy(@NotNull SyncQuery query, @NotNull String groupField, @NotNull Aggregation aggregation, @Nullable String valueField);
+
     /**
      * Save a Sync to this cache and to the database.
      *
@@ -156,6 +209,13 @@ public interface Cache<K, X extends Sync<K>> extends Service {
     @NotNull
     SyncRegistration getRegistration();
 
+    /**
+     * Gets the read routing used for this cache's MongoDB reads.
+     * Defaults to the options set on the {@link SyncRegistration}, override to customize a single cache.
+     */
+    @NotNull
+    ReadOptions getReadOptions();
+
     /**
      * Return the name of actual the MongoDB database this cache is stored in
      * This is different from the developer supplied db name, and is calculated from
@@ -252,6 +312,13 @@ public interface Cache<K, X extends Sync<K>> extends Service {
     @ApiStatus.Internal
     boolean pushUpdate(@NotNull K key, @NotNull UpdateTask task, boolean async);
 
+    /**
+     * Called before Syncs are loaded from the database by key.
+     * With interest routing, this announces the keys first, so no update saved after our read can skip this server.
+     */
+    @ApiStatus.Internal
+    void onLoading(@NotNull Collection<K> keys);
+
     @NotNull
     NetworkProfileService getNetworkStore();
 
@@ -317,5 +384,13 @@ public interface Cache<K, X extends Sync<K>> extends Service {
     @Nullable
     <T> K getSyncIdByIndex(IndexedField<X, T> index, T value);
 
+    /**
+     * Retrieve the ids of every Sync with this index value, for indexes that are not unique.
+     * The Stream must be closed if it is not fully consumed.
+     */
+    @Blocking
+    @NotNull
+    <T> Stream<K> getSyncIdsByIndex(IndexedField<X, T> index, T value);
+
 }
 
@@ -4,6 +4,7 @@ import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Blocking;
 import org.jetbrains.annotations.NonBlocking;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.concurrent.CompletableFuture;
 
@@ -112,6 +113,24 @@ public interface Sync<K> {
     @ApiStatus.Internal
     @NotNull Sync<K> getCachedCopy();
 
+    /**
+     * @return If this Sync has a cached copy (i.e. it has been loaded from or saved to the database)
+     */
+    @ApiStatus.Internal
+    boolean hasCachedCopy();
+
+    /**
+     * @param copy The state written by this server's last save (decoded from the written document)
+     */
+    @ApiStatus.Internal
+    void setSavedCopy(@Nullable Sync<K> copy);
+
+    /**
+     * @return The state written by this server's last save, sent in update packets (null if we haven't saved)
+     */
+    @ApiStatus.Internal
+    @Nullable Sync<K> getSavedCopy();
+
     @ApiStatus.Internal
     void loadLocalDeepCopy(Sync<K> other);
 
@@ -5,13 +5,20 @@ import com.kamikazejam.kamicommon.util.data.TriState;
 import com.kamikazejam.syncengine.EngineSource;
 import com.kamikazejam.syncengine.SyncEngineAPI;
 import com.kamikazejam.syncengine.SyncRegistration;
+import com.kamikazejam.syncengine.base.cache.CacheSaveResult;
+import com.kamikazejam.syncengine.base.cache.ReadOptions;
 import com.kamikazejam.syncengine.base.error.LoggerService;
 import com.kamikazejam.syncengine.base.exception.DuplicateCacheException;
 import com.kamikazejam.syncengine.base.index.IndexedField;
+import com.kamikazejam.syncengine.base.query.Aggregation;
+import com.kamikazejam.syncengine.base.query.SyncQuery;
+import com.kamikazejam.syncengine.base.store.StoreDatabase;
 import com.kamikazejam.syncengine.base.sync.CacheLoggerInstantiator;
 import com.kamikazejam.syncengine.base.sync.SyncInstantiator;
 import com.kamikazejam.syncengine.base.update.SyncUpdater;
 import com.kamikazejam.syncengine.base.update.UpdateTask;
+import com.kamikazejam.syncengine.connections.storage.MongoStorage;
+import com.kamikazejam.syncengine.connections.storage.mongo.ChangeStreamWatcher;
 import com.kamikazejam.syncengine.mode.profile.SyncProfile;
 import com.kamikazejam.syncengine.mode.profile.SyncProfileCache;
 import com.kamikazejam.syncengine.mode.profile.listener.ProfileListener;
@@ -27,11 +34,9 @@ import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.HashSet;
-import java.util.Optional;
-import java.util.Set;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 /**
  * The abstract backbone of all Sync cache systems.
@@ -53,6 +58,8 @@ public abstract class SyncCache<K, X extends Sync<K>> implements Comparable<Sync
     protected SyncInstantiator<K, X> instantiator;
     protected boolean debug = true;
     protected boolean running = false;
+    // Only set while change streams are enabled (see ChangeStreamWatcher#isEnabled)
+    protected @Nullable ChangeStreamWatcher<K, X> changeStreamWatcher = null;
 
     public SyncCache(SyncInstantiator<K, X> instantiator, String name, Class<K> key, Class<X> syncClass, SyncRegistration registration, CacheLoggerInstantiator logger) {
         this.instantiator = instantiator;
@@ -83,6 +90,10 @@ public abstract class SyncCache<K, X extends Sync<K>> implements Comparable<Sync
             loggerService.error("Failed to initialize internally for cache: " + name);
         }
         internalStartAutosave();
+        if (ChangeStreamWatcher.isEnabled()) {
+            changeStreamWatcher = new ChangeStreamWatcher<>(this, (MongoStorage) EngineSource.getStorageService());
+            changeStreamWatcher.start();
+        }
         running = true;
 
         // Register this cache
@@ -119,6 +130,9 @@ public abstract class SyncCache<K, X extends Sync<K>> implements Comparable<Sync
 
         running = false;
         internalShutdownAutosave();
+        if (changeStreamWatcher != null && changeStreamWatcher.isRunning()) {
+            changeStreamWatcher.shutdown();
+        }
 
         // Unregister this cache
         SyncEngineAPI.removeCache(this);
@@ -151,18 +165,28 @@ public abstract class SyncCache<K, X extends Sync<K>> implements Comparable<Sync
     protected abstract @NotNull SyncUpdater<K, X> getUpdater();
 
 
+    @Override
+    public void onLoading(@NotNull Collection<K> keys) {
+        if (!getUpdater().isEnabled() || keys.isEmpty()) { return; }
+        getUpdater().reserveInterest(keys);
+    }
+
     @Override
     public boolean pushUpdate(@NotNull K id, @NotNull UpdateTask task, boolean async) {
         if (!getUpdater().isEnabled()) {
             // Do nothing if the updater is not enabled (STANDALONE mode)
             return true;
         }
+        if (changeStreamWatcher != null && changeStreamWatcher.isRunning()) {
+            // Other servers receive this change from their MongoDB change stream
+            return true;
+        }
         Preconditions.checkNotNull(id, "Sync Id cannot be null for pushUpdate");
         @Nullable X sync = this.getFromCache(id).orElse(null);
 
         String ver = sync == null ? "null" : String.valueOf(sync.getVersion());
         loggerService.debug("PUSH " + keyToString(id) + " (v" + ver + "): Task=" + task);
-        return getUpdater().pushUpdate(id, task, async);
+        return getUpdater().pushUpdate(id, task, sync, async);
     }
 
     @NotNull
@@ -183,6 +207,12 @@ public abstract class SyncCache<K, X extends Sync<K>> implements Comparable<Sync
         return registration;
     }
 
+    @NotNull
+    @Override
+    public ReadOptions getReadOptions() {
+        return registration.getReadOptions();
+    }
+
     @Override
     public @NotNull String getDatabaseName() {
         return registration.getDatabaseName();
@@ -214,6 +244,65 @@ public abstract class SyncCache<K, X extends Sync<K>> implements Comparable<Sync
         sync.setVersion(update.getVersion());
     }
 
+    @Override
+    public @NotNull Map<K, X> getMany(@NotNull Collection<K> keys, boolean cacheSyncs) {
+        Preconditions.checkNotNull(keys);
+        Map<K, X> results = new HashMap<>();
+        List<K> misses = new ArrayList<>();
+        for (K key : keys) {
+            getLocalStore().get(key).ifPresentOrElse(sync -> results.put(key, sync), () -> misses.add(key));
+        }
+        if (misses.isEmpty()) {
+            return results;
+        }
+
+        getDatabaseStore().getMany(misses).forEach((key, dbSync) -> {
+            if (!cacheSyncs) {
+                results.put(key, dbSync);
+                return;
+            }
+            // Another thread may have cached this Sync since we checked, return the cached instance
+            this.cache(dbSync);
+            results.put(key, getLocalStore().get(key).orElse(dbSync));
+        });
+        return results;
+    }
+
+    @Override
+    public @NotNull List<X> find(@NotNull SyncQuery query, boolean cacheSyncs) {
+        Preconditions.checkNotNull(query);
+        List<X> results = new ArrayList<>();
+        for (X dbSync : getDatabaseStore().find(query)) {
+            Optional<X> local = getLocalStore().get(dbSync.getId());
+            if (local.isPresent()) {
+                results.add(local.get());
+                continue;
+            }
+            if (cacheSyncs) {
+                this.cache(dbSync);
+                results.add(getLocalStore().get(dbSync.getId()).orElse(dbSync));
+            } else {
+                results.add(dbSync);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public long count(@NotNull SyncQuery query) {
+        return getDatabaseStore().count(Preconditions.checkNotNull(query));
+    }
+
+    @Override
+    public @Nullable Double aggregate(@NotNull SyncQuery query, @NotNull Aggregation aggregation, @Nullable String valueField) {
+        return getDatabaseStore().aggregate(Preconditions.checkNotNull(query), aggregation, valueField);
+    }
+
+    @Override
+    public @NotNull Map<Object, Double> groupBy(@NotNull SyncQuery query, @NotNull String groupField, @NotNull Aggregation aggregation, @Nullable String valueField) {
+        return getDatabaseStore().groupBy(Preconditions.checkNotNull(query), groupField, aggregation, valueField);
+    }
+
     @Override
     public boolean saveSynchronously(@NotNull X sync) {
         return this.saveSynchronously(sync, SyncFileLogger.createStackTrace("SyncCache.saveSynchronously()"));
@@ -232,6 +321,14 @@ public abstract class SyncCache<K, X extends Sync<K>> implements Comparable<Sync
 
         this.cache(sync);
         TriState state = getDatabaseStore().save(sync);
+        return this.handleSaveResult(sync, state, trace);
+    }
+
+    /**
+     * Logs the result of a database save, and pushes an update to other servers if data was written.
+     * @return If the save was successful (NOT_SET is considered a success too)
+     */
+    private boolean handleSaveResult(@NotNull X sync, @NotNull TriState state, @NotNull Throwable trace) {
         if (state == TriState.FALSE) {
             loggerService.info("Failed to save Sync " + keyToString(sync.getId()));
             return false;
@@ -255,6 +352,52 @@ public abstract class SyncCache<K, X extends Sync<K>> implements Comparable<Sync
         return true;
     }
 
+    /**
+     * Save multiple Syncs synchronously, batching the database writes (see {@link StoreDatabase#saveAll(Collection)}).
+     * Read-only Syncs are skipped and not counted, invalid Syncs count as failures.
+     */
+    protected @NotNull CacheSaveResult saveAllSynchronously(@NotNull Collection<X> syncs) {
+        Preconditions.checkNotNull(syncs);
+        Throwable trace = SyncFileLogger.createStackTrace("SyncCache.saveAllSynchronously()");
+
+        int total = 0;
+        int failures = 0;
+        List<X> toSave = new ArrayList<>(syncs.size());
+        for (X sync : syncs) {
+            if (sync.isReadOnly()) {
+                continue;
+            }
+            total++;
+            if (!sync.isValid()) {
+                SyncFileLogger.warn(this ,"Cannot save an invalid Sync, cache: " + getName() + " id: " + sync.getId(), trace);
+                failures++;
+                continue;
+            }
+            this.cache(sync);
+            toSave.add(sync);
+        }
+        if (toSave.isEmpty()) {
+            return new CacheSaveResult(total, failures);
+        }
+
+        Map<K, TriState> results = getDatabaseStore().saveAll(toSave);
+        for (X sync : toSave) {
+            TriState state = results.getOrDefault(sync.getId(), TriState.FALSE);
+            if (state == TriState.FALSE) {
+                loggerService.info("Failed to save Sync " + keyToString(sync.getId()));
+                failures++;
+            } else if (state == TriState.TRUE) {
+                // Push update so other servers can load the new data
+                try {
+                    pushUpdate(sync.getId(), UpdateTask.PULL_FROM_STORE, true);
+                } catch (IllegalPluginAccessException e) {
+                    pushUpdate(sync.getId(), UpdateTask.PULL_FROM_STORE, false);
+                }
+            }
+        }
+        return new CacheSaveResult(total, failures);
+    }
+
     @Override
     public CompletableFuture<Boolean> save(@NotNull X sync) {
         Preconditions.checkNotNull(sync);
@@ -268,9 +411,14 @@ public abstract class SyncCache<K, X extends Sync<K>> implements Comparable<Sync
         }
 
         Throwable trace = SyncFileLogger.createStackTrace("SyncCache.save()");
-        CompletableFuture<Boolean> future = new CompletableFuture<>();
-        runAsync(() -> future.complete(saveSynchronously(sync, trace)));
-        return future;
+        this.cache(sync);
+        // Runs on the StorageService executor, rather than parking a Bukkit async thread
+        return getDatabaseStore().saveAsync(sync)
+                .thenApply(state -> handleSaveResult(sync, state, trace))
+                .exceptionally(t -> {
+                    loggerService.info(t, "Failed to save Sync " + keyToString(sync.getId()));
+                    return false;
+                });
     }
 
     @Override
@@ -456,4 +604,9 @@ public abstract class SyncCache<K, X extends Sync<K>> implements Comparable<Sync
     public <T> @Nullable K getSyncIdByIndex(IndexedField<X, T> index, T value) {
         return EngineSource.getStorageService().getSyncIdByIndex(this, index, value);
     }
+
+    @Override
+    public <T> @NotNull Stream<K> getSyncIdsByIndex(IndexedField<X, T> index, T value) {
+        return EngineSource.getStorageService().getSyncIdsByIndex(this, index, value);
+    }
 }
@@ -0,0 +1,110 @@
+package com.kamikazejam.syncengine.base.cache;
+
+import com.google.common.base.Preconditions;
+import com.mongodb.ReadPreference;
+import com.mongodb.ReadPreferenceHedgeOptions;
+import com.mongodb.TaggableReadPreference;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controls where a cache's reads are routed when using MongoDB storage. (Ignored by FILE storage)
+ * Point reads are single or multi key loads (get, getMany, has), bulk reads are scans (getAll, streamAll,
+ * getIDs, size, getByIndex). Writes and the version checks made while saving always go to the primary.
+ * <p>
+ * Set defaults for all of a plugin's caches with {@link com.kamikazejam.syncengine.SyncRegistration#setReadOptions(ReadOptions)},
+ * or override {@link com.kamikazejam.syncengine.base.Cache#getReadOptions()} in a cache.
+ */
+@Getter
+@SuppressWarnings("unused")
+public class ReadOptions {
+    public enum Mode { PRIMARY, PRIMARY_PREFERRED, SECONDARY, SECONDARY_PREFERRED, NEAREST }
+
+    /**
+     * MongoDB requires maxStaleness to be at least 90 seconds.
+     */
+    public static final long MIN_MAX_STALENESS_SEC = 90;
+
+    private Mode pointReads = Mode.PRIMARY;
+    private Mode bulkReads = Mode.PRIMARY;
+    /**
+     * How far behind the primary a secondary may be to serve reads (-1 for no limit).
+     */
+    private long maxStalenessSec = -1;
+    /**
+     * If point reads on non-primary modes should be hedged (sent to two members, the fastest reply wins).
+     */
+    private boolean hedgedReads = false;
+    /**
+     * If point reads should run in a causally consistent session that includes this server's latest writes,
+     * so a secondary never returns data older than what this server saved.
+     */
+    private boolean readYourWrites = false;
+
+    public ReadOptions() {}
+
+    /**
+     * @return The default options, all reads go to the primary.
+     */
+    public static @NotNull ReadOptions primary() {
+        return new ReadOptions();
+    }
+
+    public @NotNull ReadOptions pointReads(@NotNull Mode mode) {
+        this.pointReads = Preconditions.checkNotNull(mode);
+        return this;
+    }
+
+    public @NotNull ReadOptions bulkReads(@NotNull Mode mode) {
+        this.bulkReads = Preconditions.checkNotNull(mode);
+        return this;
+    }
+
+    public @NotNull ReadOptions maxStaleness(long seconds) {
+        Preconditions.checkArgument(seconds < 0 || seconds >= MIN_MAX_STALENESS_SEC, "maxStaleness must be at least " + MIN_MAX_STALENESS_SEC + " seconds");
+        this.maxStalenessSec = seconds;
+        return this;
+    }
+
+    public @NotNull ReadOptions hedgedReads(boolean hedged) {
+        this.hedgedReads = hedged;
+        return this;
+    }
+
+    public @NotNull ReadOptions readYourWrites(boolean readYourWrites) {
+        this.readYourWrites = readYourWrites;
+        return this;
+    }
+
+    /**
+     * @return The MongoDB read preference for point reads (bulk = false) or bulk reads (bulk = true)
+     */
+    public @NotNull ReadPreference toReadPreference(boolean bulk) {
+        Mode mode = bulk ? bulkReads : pointReads;
+        if (mode == Mode.PRIMARY) {
+            return ReadPreference.primary();
+        }
+
+        TaggableReadPreference pref = switch (mode) {
+            case PRIMARY_PREFERRED -> staleness(ReadPreference::primaryPreferred, ReadPreference.primaryPreferred());
+            case SECONDARY -> staleness(ReadPreference::secondary, ReadPreference.secondary());
+            case SECONDARY_PREFERRED -> staleness(ReadPreference::secondaryPreferred, ReadPreference.secondaryPreferred());
+            default -> staleness(ReadPreference::nearest, ReadPreference.nearest());
+        };
+        return (hedgedReads && !bulk) ? withHedge(pref) : pref;
+    }
+
+    private interface StalenessFactory { ReadPreference create(long maxStaleness, TimeUnit unit); }
+
+    private @NotNull TaggableReadPreference staleness(@NotNull StalenessFactory factory, @NotNull ReadPreference unbounded) {
+        ReadPreference pref = (maxStalenessSec < 0) ? unbounded : factory.create(maxStalenessSec, TimeUnit.SECONDS);
+        return (TaggableReadPreference) pref;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static @NotNull ReadPreference withHedge(@NotNull TaggableReadPreference pref) {
+        return pref.withHedgeOptions(ReadPreferenceHedgeOptions.builder().enabled(true).build());
+    }
+}
@@ -0,0 +1,59 @@
+package com.kamikazejam.syncengine.base.index;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.base.Preconditions;
+import com.kamikazejam.syncengine.base.Cache;
+import com.kamikazejam.syncengine.base.Sync;
+import com.kamikazejam.syncengine.util.JacksonUtil;
+import lombok.SneakyThrows;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * An index over multiple stored fields. The value is the list of field values, in the order of the fields.
+ * Implementations only need to provide {@link #getValue(Sync)}, i.e. List.of(sync.getWorld(), sync.getClanId())
+ */
+@SuppressWarnings("unused")
+public abstract class CompoundIndexedField<X extends Sync<?>> extends IndexedField<X, List<?>> {
+    private final @NotNull List<String> fields;
+
+    public CompoundIndexedField(@NotNull Cache<?, X> cache, @NotNull String name, @NotNull String... fields) {
+        super(cache, name);
+        Preconditions.checkArgument(fields.length >= 2, "A compound index requires at least 2 fields");
+        this.fields = List.of(fields);
+    }
+
+    @Override
+    public @NotNull List<String> getFields() {
+        return fields;
+    }
+
+    @Override
+    public @NotNull Map<String, Object> toFieldValues(@NotNull List<?> value) {
+        Preconditions.checkArgument(value.size() == fields.size(), "Expected " + fields.size() + " values for index " + getName());
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (int i = 0; i < fields.size(); i++) {
+            values.put(fields.get(i), value.get(i));
+        }
+        return values;
+    }
+
+    @Override
+    public boolean equals(@Nullable List<?> a, @Nullable List<?> b) {
+        return Objects.equals(a, b);
+    }
+
+    @SneakyThrows
+    @Override
+    public @NotNull String toString(@NotNull Object value) {
+        return JacksonUtil.getMapper().writeValueAsString(value);
+    }
+
+    @SneakyThrows
+    @Override
+    public @NotNull List<?> fromString(@NotNull String value) {
+        return JacksonUtil.getMapper().readValue(value, new TypeReference<List<Object>>() {});
+    }
+}
@@ -2,17 +2,33 @@ package com.kamikazejam.syncengine.base.index;
 
 import com.kamikazejam.syncengine.base.Cache;
 import com.kamikazejam.syncengine.base.Sync;
+import com.kamikazejam.syncengine.base.query.SyncQuery;
 import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.List;
+import java.util.Map;
+
 /**
- * All IndexFields are assumed to be unique (only have one Sync with that value)
+ * IndexFields are unique by default (only have one Sync with that value), use {@link #unique(boolean)} to allow
+ *  many Syncs per value, and look them up with {@link Cache#getSyncIdsByIndex(IndexedField, Object)}.
+ * Configure the index before registering it with {@link Cache#registerIndex(IndexedField)}.
  */
 @Getter @SuppressWarnings("unused")
 public abstract class IndexedField<X extends Sync<?>, T> {
     private final @NotNull Cache<?, X> cache;
     private final @NotNull String name;
+    private boolean unique = true;
+    /**
+     * Sparse indexes skip Syncs that don't have the field
+     */
+    private boolean sparse = false;
+    /**
+     * Partial indexes only include Syncs matching this query (null for all Syncs)
+     */
+    private @Nullable SyncQuery partialFilter = null;
+
     public IndexedField(@NotNull Cache<?, X> cache, @NotNull String name) {
         this.cache = cache;
         this.name = name;
@@ -25,4 +41,36 @@ public abstract class IndexedField<X extends Sync<?>, T> {
     public abstract @NotNull String toString(@NotNull Object value);
 
     public abstract @NotNull T fromString(@NotNull String value);
+
+    /**
+     * @return The stored (json) fields covered by this index, in index order
+     */
+    public @NotNull List<String> getFields() {
+        return List.of(name);
+    }
+
+    /**
+     * @return The value of each stored field for an index value (used to query the database)
+     */
+    public @NotNull Map<String, Object> toFieldValues(@NotNull T value) {
+        return Map.of(name, value);
+    }
+
+    // ------------------------------------------------- //
+    //                      Options                      //
+    // ------------------------------------------------- //
+    public @NotNull IndexedField<X, T> unique(boolean unique) {
+        this.unique = unique;
+        return this;
+    }
+
+    public @NotNull IndexedField<X, T> sparse(boolean sparse) {
+        this.sparse = sparse;
+        return this;
+    }
+
+    public @NotNull IndexedField<X, T> partialFilter(@Nullable SyncQuery partialFilter) {
+        this.partialFilter = partialFilter;
+        return this;
+    }
 }
@@ -4,7 +4,10 @@ import com.kamikazejam.kamicommon.configuration.spigot.KamiConfig;
 import com.kamikazejam.kamicommon.util.StringUtil;
 import com.kamikazejam.syncengine.EngineSource;
 import com.kamikazejam.syncengine.connections.redis.RedisService;
+import com.kamikazejam.syncengine.mode.profile.handshake.combined.CombinedHandshakeService;
 import com.kamikazejam.syncengine.mode.profile.handshake.swap.NetworkSwapService;
+import com.kamikazejam.syncengine.network.player.actions.PlayerActionService;
+import com.kamikazejam.syncengine.network.presence.PresenceDirectory;
 import com.kamikazejam.syncengine.network.profile.service.NetworkProfileServiceLocal;
 import com.kamikazejam.syncengine.network.profile.service.NetworkProfileServiceRedis;
 import com.kamikazejam.syncengine.network.profile.service.NetworkProfileService;
@@ -34,7 +37,10 @@ public enum SyncMode {
         this.getRedisService();
         this.getServerService();
         this.getSwapService();
+        this.getHandshakeService();
         this.getNetworkService();
+        this.getPresenceDirectory();
+        this.getActionService();
     }
 
     private RedisService redisService = null;
@@ -86,6 +92,20 @@ public enum SyncMode {
         return swapService;
     }
 
+    private CombinedHandshakeService handshakeService = null;
+    public @NotNull CombinedHandshakeService getHandshakeService() {
+        // Like the SwapService, this service ignores calls when not in networked
+        if (handshakeService == null) {
+            EngineSource.get().getColorLogger().info("Enabling CombinedHandshakeService...");
+            handshakeService = new CombinedHandshakeService();
+            if (!handshakeService.start()) {
+                EngineSource.get().getLogger().severe(StringUtil.t("&cFailed to start CombinedHandshakeService, shutting down..."));
+                Bukkit.shutdown();
+            }
+        }
+        return handshakeService;
+    }
+
     private NetworkProfileService networkService = null;
     public @NotNull NetworkProfileService getNetworkService() {
         if (networkService == null) {
@@ -99,6 +119,37 @@ public enum SyncMode {
         return networkService;
     }
 
+    private PresenceDirectory presenceDirectory = null;
+    public @Nullable PresenceDirectory getPresenceDirectory() {
+        if (this != SyncMode.NETWORKED) {
+            return null;
+        }
+
+        if (presenceDirectory == null) {
+            EngineSource.get().getColorLogger().info("Enabling PresenceDirectory...");
+            presenceDirectory = new PresenceDirectory();
+            if (!presenceDirectory.start()) {
+                EngineSource.get().getLogger().severe(StringUtil.t("&cFailed to start PresenceDirectory, shutting down..."));
+                Bukkit.shutdown();
+            }
+        }
+        return presenceDirectory;
+    }
+
+    private PlayerActionService actionService = null;
+    public @NotNull PlayerActionService getActionService() {
+        // Like the SwapService, this service ignores calls when not in networked
+        if (actionService == null) {
+            EngineSource.get().getColorLogger().info("Enabling PlayerActionService...");
+            actionService = new PlayerActionService();
+            if (!actionService.start()) {
+                EngineSource.get().getLogger().severe(StringUtil.t("&cFailed to start PlayerActionService, shutting down..."));
+                Bukkit.shutdown();
+            }
+        }
+        return actionService;
+    }
+
     public void disableServices() {
         if (serverService != null) {
             serverService.shutdown();
@@ -108,6 +159,24 @@ public enum SyncMode {
             networkService.shutdown();
             networkService = null;
         }
+        if (actionService != null) {
+            if (actionService.isRunning()) {
+                actionService.shutdown();
+            }
+            actionService = null;
+        }
+        if (presenceDirectory != null) {
+            if (presenceDirectory.isRunning()) {
+                presenceDirectory.shutdown();
+            }
+            presenceDirectory = null;
+        }
+        if (handshakeService != null) {
+            if (handshakeService.isRunning()) {
+                handshakeService.shutdown();
+            }
+            handshakeService = null;
+        }
         // Shutdown redis last (after final messages are sent)
         if (redisService != null) {
             redisService.shutdown();
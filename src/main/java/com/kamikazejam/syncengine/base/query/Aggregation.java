@@ -0,0 +1,16 @@
+package com.kamikazejam.syncengine.base.query;
+
+/**
+ * The accumulators supported by {@link com.kamikazejam.syncengine.base.Cache#aggregate(SyncQuery, Aggregation, String)}
+ * and {@link com.kamikazejam.syncengine.base.Cache#groupBy(SyncQuery, String, Aggregation, String)}.
+ */
+public enum Aggregation {
+    /**
+     * Number of matching Syncs (the value field is ignored)
+     */
+    COUNT,
+    SUM,
+    MIN,
+    MAX,
+    AVG
+}
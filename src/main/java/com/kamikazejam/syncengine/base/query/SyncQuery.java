@@ -0,0 +1,127 @@
+package com.kamikazejam.syncengine.base.query;
+
+import com.google.common.base.Preconditions;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A query over the stored Syncs of a cache. Fields are referenced by their serialized (json) names,
+ * and nested fields can be referenced with dotted paths (i.e. "stats.kills").
+ * All conditions must match (AND). MongoDB runs the query natively, FILE storage evaluates it with a parallel scan.
+ */
+@Getter
+@SuppressWarnings("unused")
+public class SyncQuery {
+    public enum Operator { EQ, NE, GT, GTE, LT, LTE, IN, EXISTS }
+
+    @Getter
+    public static class Condition {
+        private final @NotNull String field;
+        private final @NotNull Operator operator;
+        private final @Nullable Object value;
+
+        private Condition(@NotNull String field, @NotNull Operator operator, @Nullable Object value) {
+            this.field = Preconditions.checkNotNull(field);
+            this.operator = operator;
+            this.value = value;
+        }
+    }
+
+    @Getter
+    public static class Sort {
+        private final @NotNull String field;
+        private final boolean ascending;
+
+        private Sort(@NotNull String field, boolean ascending) {
+            this.field = Preconditions.checkNotNull(field);
+            this.ascending = ascending;
+        }
+    }
+
+    private final List<Condition> conditions = new ArrayList<>();
+    private final List<Sort> sorts = new ArrayList<>();
+    private int skip = 0;
+    /**
+     * The max number of results, 0 for no limit
+     */
+    private int limit = 0;
+
+    public SyncQuery() {}
+
+    /**
+     * @return A query matching every Sync
+     */
+    public static @NotNull SyncQuery all() {
+        return new SyncQuery();
+    }
+
+    // ------------------------------------------------- //
+    //                     Conditions                    //
+    // ------------------------------------------------- //
+    public @NotNull SyncQuery eq(@NotNull String field, @Nullable Object value) {
+        return this.where(field, Operator.EQ, value);
+    }
+
+    public @NotNull SyncQuery ne(@NotNull String field, @Nullable Object value) {
+        return this.where(field, Operator.NE, value);
+    }
+
+    public @NotNull SyncQuery gt(@NotNull String field, @NotNull Object value) {
+        return this.where(field, Operator.GT, value);
+    }
+
+    public @NotNull SyncQuery gte(@NotNull String field, @NotNull Object value) {
+        return this.where(field, Operator.GTE, value);
+    }
+
+    public @NotNull SyncQuery lt(@NotNull String field, @NotNull Object value) {
+        return this.where(field, Operator.LT, value);
+    }
+
+    public @NotNull SyncQuery lte(@NotNull String field, @NotNull Object value) {
+        return this.where(field, Operator.LTE, value);
+    }
+
+    public @NotNull SyncQuery in(@NotNull String field, @NotNull Collection<?> values) {
+        return this.where(field, Operator.IN, new ArrayList<>(values));
+    }
+
+    public @NotNull SyncQuery exists(@NotNull String field, boolean exists) {
+        return this.where(field, Operator.EXISTS, exists);
+    }
+
+    private @NotNull SyncQuery where(@NotNull String field, @NotNull Operator operator, @Nullable Object value) {
+        this.conditions.add(new Condition(field, operator, value));
+        return this;
+    }
+
+    // ------------------------------------------------- //
+    //                 Sort, Skip & Limit                //
+    // ------------------------------------------------- //
+    public @NotNull SyncQuery sortAsc(@NotNull String field) {
+        this.sorts.add(new Sort(field, true));
+        return this;
+    }
+
+    public @NotNull SyncQuery sortDesc(@NotNull String field) {
+        this.sorts.add(new Sort(field, false));
+        return this;
+    }
+
+    public @NotNull SyncQuery skip(int skip) {
+        Preconditions.checkArgument(skip >= 0, "skip must not be negative");
+        this.skip = skip;
+        return this;
+    }
+
+    public @NotNull SyncQuery limit(int limit) {
+        Preconditions.checkArgument(limit >= 0, "limit must not be negative");
+        this.limit = limit;
+        return this;
+    }
+}
@@ -5,12 +5,21 @@ import com.kamikazejam.syncengine.EngineSource;
 import com.kamikazejam.syncengine.base.Cache;
 import com.kamikazejam.syncengine.base.Sync;
 import com.kamikazejam.syncengine.base.exception.VersionMismatchException;
+import com.kamikazejam.syncengine.base.query.Aggregation;
+import com.kamikazejam.syncengine.base.query.SyncQuery;
 import com.kamikazejam.syncengine.connections.storage.StorageService;
 import com.kamikazejam.syncengine.connections.storage.iterable.TransformingIterator;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
 
 /**
  * Wraps up the StorageService with the Cache backing the Syncs, and exposes ObjectStore methods
@@ -54,6 +63,7 @@ public abstract class StoreDatabase<K, X extends Sync<K>> extends SyncStore<K, X
     @Override
     protected Optional<X> get(Cache<K, X> cache, @NotNull K key) {
         // Fetch the Sync from the database
+        cache.onLoading(List.of(key));
         Optional<X> o = storageService.get(cache, key);
         // Save Copy for VersionMismatchException handling
         o.ifPresent(s -> {
@@ -64,17 +74,67 @@ public abstract class StoreDatabase<K, X extends Sync<K>> extends SyncStore<K, X
         return o;
     }
 
+    /**
+     * Fetch a Sync from the primary, regardless of the cache's read options (see {@link StorageService#getFromPrimary(Cache, Object)})
+     */
+    public @NotNull Optional<X> getFromPrimary(@NotNull K key) {
+        cache.onLoading(List.of(key));
+        Optional<X> o = storageService.getFromPrimary(cache, key);
+        // Save Copy for VersionMismatchException handling
+        o.ifPresent(s -> {
+            s.setCache(cache);
+            s.cacheCopy();
+        });
+        return o;
+    }
+
+    /**
+     * Fetch multiple Syncs from the database in bulk (see {@link StorageService#getMany(Cache, Collection)})
+     * @return The Syncs that were found, keyed by id
+     */
+    public @NotNull Map<K, X> getMany(@NotNull Collection<K> keys) {
+        cache.onLoading(keys);
+        Map<K, X> results = storageService.getMany(cache, keys);
+        // Save Copy for VersionMismatchException handling
+        results.values().forEach(s -> {
+            s.setCache(cache);
+            s.cacheCopy();
+        });
+        return results;
+    }
+
+    /**
+     * Fetch the Syncs matching a query from the database (see {@link StorageService#find(Cache, SyncQuery)})
+     */
+    public @NotNull List<X> find(@NotNull SyncQuery query) {
+        List<X> results = storageService.find(cache, query);
+        // Save Copy for VersionMismatchException handling
+        results.forEach(s -> {
+            s.setCache(cache);
+            s.cacheCopy();
+        });
+        return results;
+    }
+
+    public long count(@NotNull SyncQuery query) {
+        return storageService.count(cache, query);
+    }
+
+    public @Nullable Double aggregate(@NotNull SyncQuery query, @NotNull Aggregation aggregation, @Nullable String valueField) {
+        return storageService.aggregate(cache, query, aggregation, valueField);
+    }
+
+    public @NotNull Map<Object, Double> groupBy(@NotNull SyncQuery query, @NotNull String groupField, @NotNull Aggregation aggregation, @Nullable String valueField) {
+        return storageService.groupBy(cache, query, groupField, aggregation, valueField);
+    }
+
     @Override
     protected @NotNull TriState save(Cache<K, X> cache, @NotNull X sync) {
         // All saves to Database Storage run through here
 
         try {
-            TriState state = storageService.save(cache, sync);
-            // DB has been updated, we should update the cache copy
-            if (state != TriState.FALSE) {
-                sync.cacheCopy();
-            }
-            return state;
+            // The StorageService updates the cache copy from the state it wrote
+            return storageService.save(cache, sync);
         }catch (VersionMismatchException ex) {
             // Handle VersionMismatchException
             @NotNull X updatedSync = this.callVersionMismatch(cache, sync, ex);
@@ -82,13 +142,92 @@ public abstract class StoreDatabase<K, X extends Sync<K>> extends SyncStore<K, X
             TriState state = this.save(cache, updatedSync);
             if (state != TriState.FALSE) {
                 // If saved properly, update our local object
-                cache.updateSyncFromNewer(sync, updatedSync);
-                sync.cacheCopy(); // need to call this again since data changed
+                this.applySaved(sync, updatedSync);
             }
             return state;
         }
     }
 
+    /**
+     * Update our local Sync from the resolved Sync we saved after a version mismatch, along with its cache copy
+     *  (the state that was written, the local Sync itself may have changed since)
+     */
+    private void applySaved(@NotNull X sync, @NotNull X updatedSync) {
+        synchronized (sync) {
+            cache.updateSyncFromNewer(sync, updatedSync);
+            if (updatedSync.hasCachedCopy()) {
+                sync.setCachedCopy(updatedSync.getCachedCopy());
+            }
+            sync.setSavedCopy(updatedSync.getSavedCopy());
+        }
+    }
+
+    /**
+     * Save multiple Syncs, in batches of {@link #getBulkSaveBatchSize()} where the StorageService supports it.
+     * Syncs that couldn't be saved in bulk (i.e. version mismatches) fall back to {@link #save(Sync)}.
+     * @return The save result for every Sync, keyed by id
+     */
+    public @NotNull Map<K, TriState> saveAll(@NotNull Collection<X> syncs) {
+        // The StorageService updates the cache copies from the states it wrote
+        Map<K, TriState> results = storageService.saveAll(cache, syncs, getBulkSaveBatchSize());
+        for (X sync : syncs) {
+            if (!results.containsKey(sync.getId())) {
+                results.put(sync.getId(), this.save(cache, sync));
+            }
+        }
+        return results;
+    }
+
+    public static int getBulkSaveBatchSize() {
+        return Math.max(1, EngineSource.getConfig().getInt("bulkSaveBatchSize", 250));
+    }
+
+    // ---------------------------------------------------------------- //
+    //                               Async                              //
+    // ---------------------------------------------------------------- //
+    /**
+     * Async variant of {@link #get(Object)}, runs on the StorageService executor.
+     */
+    public @NotNull CompletableFuture<Optional<X>> getAsync(@NotNull K key) {
+        cache.onLoading(List.of(key));
+        return storageService.getAsync(cache, key).thenApply(o -> {
+            // Save Copy for VersionMismatchException handling
+            o.ifPresent(s -> {
+                s.setCache(cache);
+                s.cacheCopy();
+            });
+            return o;
+        });
+    }
+
+    /**
+     * Async variant of {@link #save(Sync)}, runs on the StorageService executor.
+     * Version mismatches are resolved the same way as the blocking save.
+     */
+    public @NotNull CompletableFuture<TriState> saveAsync(@NotNull X sync) {
+        return storageService.saveAsync(cache, sync).handle((state, t) -> {
+            if (t == null) {
+                // The StorageService updated the cache copy from the state it wrote
+                return CompletableFuture.completedFuture(state);
+            }
+
+            Throwable cause = (t instanceof CompletionException && t.getCause() != null) ? t.getCause() : t;
+            if (!(cause instanceof VersionMismatchException ex)) {
+                return CompletableFuture.<TriState>failedFuture(cause);
+            }
+
+            // Handle VersionMismatchException, then save our new Sync version
+            @NotNull X updatedSync = this.callVersionMismatch(cache, sync, ex);
+            return this.saveAsync(updatedSync).thenApply(updatedState -> {
+                if (updatedState != TriState.FALSE) {
+                    // If saved properly, update our local object
+                    this.applySaved(sync, updatedSync);
+                }
+                return updatedState;
+            });
+        }).thenCompose(f -> f);
+    }
+
     @Override
     protected boolean has(Cache<K, X> cache, @NotNull K key) {
         return storageService.has(cache, key);
@@ -111,6 +250,18 @@ public abstract class StoreDatabase<K, X extends Sync<K>> extends SyncStore<K, X
         });
     }
 
+    /**
+     * Stream all Syncs from the database (see {@link StorageService#streamAll(Cache, java.util.function.Consumer)})
+     * The cache and cacheCopy are set on the worker threads as the Syncs are decoded.
+     */
+    public @NotNull Stream<X> streamAll() {
+        return storageService.streamAll(cache, x -> {
+            // Make sure to set the cache and cacheCopy as we load the Syncs
+            x.setCache(cache);
+            x.cacheCopy();
+        });
+    }
+
     @Override
     public @NotNull Iterable<K> getKeys() {
         return storageService.getKeys(cache);
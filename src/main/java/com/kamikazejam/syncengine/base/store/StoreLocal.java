@@ -6,6 +6,7 @@ import com.kamikazejam.syncengine.base.Cache;
 import com.kamikazejam.syncengine.base.Sync;
 import com.kamikazejam.syncengine.util.SyncFileLogger;
 import lombok.Getter;
+import lombok.Setter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -13,12 +14,16 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Getter
 public abstract class StoreLocal<K, X extends Sync<K>> implements StoreMethods<K, X> {
 
     private final ConcurrentMap<K, X> localCache = new ConcurrentHashMap<>();
+    // Notified when a new key is cached (i.e. by the InterestTracker)
+    @Setter
+    private volatile @Nullable Consumer<K> onAdd = null;
 
     // ----------------------------------------------------- //
     //                     Store Methods                     //
@@ -38,7 +43,11 @@ public abstract class StoreLocal<K, X extends Sync<K>> implements StoreMethods<K
         }
 
         // If not called already, call initialized (since we're caching it)
-        this.localCache.put(sync.getId(), sync);
+        @Nullable X previous = this.localCache.put(sync.getId(), sync);
+        @Nullable Consumer<K> listener = this.onAdd;
+        if (previous == null && listener != null) {
+            listener.accept(sync.getId());
+        }
         return TriState.TRUE;
     }
 
@@ -0,0 +1,28 @@
+package com.kamikazejam.syncengine.base.update;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * A server's summary of the keys it has cached (a serialized Bloom filter), see {@link InterestTracker}.
+ * A delta packet has no filter, and only lists keys that were added to the sender's summary.
+ */
+@Getter @SuppressWarnings("unused")
+public class InterestPacket {
+    private String sourceServer;
+    private byte @Nullable [] filter;
+    private @Nullable List<String> added;
+
+    public InterestPacket() {}
+    public InterestPacket(@NotNull String sourceServer, byte @NotNull [] filter) {
+        this.sourceServer = sourceServer;
+        this.filter = filter;
+    }
+    public InterestPacket(@NotNull String sourceServer, @NotNull List<String> added) {
+        this.sourceServer = sourceServer;
+        this.added = added;
+    }
+}
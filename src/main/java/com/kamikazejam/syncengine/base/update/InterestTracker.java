@@ -0,0 +1,241 @@
+package com.kamikazejam.syncengine.base.update;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.kamikazejam.kamicommon.redis.RedisChannel;
+import com.kamikazejam.syncengine.EngineSource;
+import com.kamikazejam.syncengine.base.Cache;
+import com.kamikazejam.syncengine.base.Sync;
+import com.kamikazejam.syncengine.connections.redis.RedisService;
+import com.kamikazejam.syncengine.server.ServerService;
+import com.kamikazejam.syncengine.server.SyncServer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Tracks which servers might have each key of a cache cached, so updates are only sent to those servers.
+ * Each server publishes a Bloom filter of its cached keys, rebuilt from scratch every {@link #REBUILD_MS} to drop keys
+ *  it no longer holds. Keys cached in between are published as deltas (batched every tick), which the other servers
+ *  add to their copy of our filter.
+ * Keys about to be loaded from the database are announced first (as a delta), so an update saved after the load
+ *  read cannot be routed around this server.
+ * Updates fall back to a broadcast while any online server has no summary, or one older than {@link #MAX_AGE_MS}.
+ */
+@SuppressWarnings("unused")
+public class InterestTracker<K, X extends Sync<K>> {
+    public static final long REBUILD_MS = 10_000L;
+    public static final long MAX_AGE_MS = 30_000L;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final Cache<K, X> cache;
+    private final String serverName;
+    private RedisChannel<InterestPacket> channel = null;
+
+    // Our summary, keys are added as they are cached
+    private volatile BloomFilter<CharSequence> local;
+    // Set when the full filter must be published (after a rebuild)
+    private volatile boolean dirty = true;
+    // Keys added to our filter since it was last published
+    private final Queue<String> added = new ConcurrentLinkedQueue<>();
+    private long lastRebuild = 0;
+    // Keys reserved before a load (key -> time), kept through a rebuild in case their load is still running
+    private final Map<String, Long> reserved = new ConcurrentHashMap<>();
+
+    // The latest summary from each other server (by lowercase name)
+    private final Map<String, Summary> summaries = new ConcurrentHashMap<>();
+
+    private static class Summary {
+        private final @NotNull BloomFilter<CharSequence> filter;
+        private final long receivedAt;
+
+        private Summary(@NotNull BloomFilter<CharSequence> filter, long receivedAt) {
+            this.filter = filter;
+            this.receivedAt = receivedAt;
+        }
+    }
+
+    public InterestTracker(@NotNull Cache<K, X> cache, @NotNull String serverName) {
+        this.cache = cache;
+        this.serverName = serverName.toLowerCase();
+        this.local = createFilter(0);
+    }
+
+    /**
+     * @return If interest routing is enabled in the config
+     */
+    public static boolean isEnabled() {
+        return EngineSource.getConfig().getBoolean("interestRouting", false);
+    }
+
+    public void start(@NotNull RedisService redis, @NotNull String channelName) {
+        this.channel = redis.getApi().registerChannel(InterestPacket.class, channelName);
+        channel.subscribe((c, packet) -> receive(packet));
+        cache.getLocalStore().setOnAdd(this::onCached);
+        // Announce ourselves before we cache anything, so publishers start sending to us
+        this.rebuild();
+        this.publish();
+    }
+
+    public void shutdown() {
+        cache.getLocalStore().setOnAdd(null);
+    }
+
+    // ----------------------------------------------------- //
+    //                     Local Summary                     //
+    // ----------------------------------------------------- //
+    private void onCached(@NotNull K key) {
+        String keyString = cache.keyToString(key);
+        // Only keys that changed the filter are news to the other servers (i.e. not reserved keys)
+        if (local.put(keyString)) {
+            added.add(keyString);
+        }
+    }
+
+    /**
+     * Called every tick, publishes our full summary after a rebuild, or the keys added to it since the last publish
+     */
+    public void tick() {
+        if (System.currentTimeMillis() - lastRebuild >= REBUILD_MS) {
+            this.rebuild();
+        }
+        if (dirty) {
+            // The full filter includes every key added before it is written
+            added.clear();
+            this.publish();
+        } else if (!added.isEmpty()) {
+            this.publishAdded();
+        }
+    }
+
+    private void rebuild() {
+        Set<K> keys = cache.getLocalStore().getKeys();
+        BloomFilter<CharSequence> fresh = createFilter(keys.size());
+        // Swap first, so keys cached during the rebuild are added to the new filter
+        this.local = fresh;
+        keys.forEach(key -> fresh.put(cache.keyToString(key)));
+        // Keep recent reservations, their loads may not have cached the Sync yet
+        long now = System.currentTimeMillis();
+        reserved.entrySet().removeIf(e -> now - e.getValue() > REBUILD_MS);
+        reserved.keySet().forEach(fresh::put);
+        this.lastRebuild = System.currentTimeMillis();
+        this.dirty = true;
+    }
+
+    /**
+     * Add keys to our summary before they are loaded, and announce them to the other servers right away.
+     * The delta is published synchronously, so it reaches Redis before the database read begins.
+     */
+    public void reserve(@NotNull Collection<K> keys) {
+        if (channel == null) { return; }
+        long now = System.currentTimeMillis();
+        List<String> added = new ArrayList<>(keys.size());
+        for (K key : keys) {
+            String keyString = cache.keyToString(key);
+            reserved.put(keyString, now);
+            local.put(keyString);
+            added.add(keyString);
+        }
+        try {
+            channel.publish(new InterestPacket(serverName, added), true);
+        } catch (Exception ex) {
+            // The full summary will include these keys on the next tick
+            dirty = true;
+            cache.getLoggerService().info(ex, "Failed to publish interest delta for cache: " + cache.getName());
+        }
+    }
+
+    private void publishAdded() {
+        List<String> keys = new ArrayList<>();
+        @Nullable String key;
+        while ((key = added.poll()) != null) {
+            keys.add(key);
+        }
+        if (keys.isEmpty()) { return; }
+        try {
+            channel.publish(new InterestPacket(serverName, keys), false);
+        } catch (Exception ex) {
+            // Send the full summary on the next tick instead
+            dirty = true;
+            cache.getLoggerService().info(ex, "Failed to publish interest delta for cache: " + cache.getName());
+        }
+    }
+
+    private void publish() {
+        dirty = false;
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            local.writeTo(out);
+            channel.publish(new InterestPacket(serverName, out.toByteArray()), false);
+        } catch (Exception ex) {
+            dirty = true;
+            cache.getLoggerService().info(ex, "Failed to publish interest summary for cache: " + cache.getName());
+        }
+    }
+
+    private static @NotNull BloomFilter<CharSequence> createFilter(int size) {
+        // Leave room to grow until the next rebuild
+        return BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), Math.max(1024, size * 2), FALSE_POSITIVE_RATE);
+    }
+
+    // ----------------------------------------------------- //
+    //                    Remote Summaries                   //
+    // ----------------------------------------------------- //
+    private void receive(@NotNull InterestPacket packet) {
+        if (packet.getSourceServer() == null) { return; }
+        String source = packet.getSourceServer().toLowerCase();
+        if (source.equals(serverName)) { return; }
+        if (packet.getFilter() == null) {
+            // A delta, without a summary for this server we broadcast to it anyway
+            @Nullable Summary summary = summaries.get(source);
+            if (summary != null && packet.getAdded() != null) {
+                packet.getAdded().forEach(summary.filter::put);
+            }
+            return;
+        }
+        try {
+            BloomFilter<CharSequence> filter = BloomFilter.readFrom(new ByteArrayInputStream(packet.getFilter()), Funnels.stringFunnel(StandardCharsets.UTF_8));
+            summaries.put(source, new Summary(filter, System.currentTimeMillis()));
+        } catch (IOException ex) {
+            cache.getLoggerService().info(ex, "Failed to read interest summary from " + source + " for cache: " + cache.getName());
+        }
+    }
+
+    /**
+     * @return The servers (lowercase names) that might have this key cached, or null if the update must be broadcast
+     *  (because an online server has no summary, or a stale one)
+     */
+    public @Nullable Set<String> getTargets(@NotNull String key) {
+        @Nullable ServerService serverService = EngineSource.getServerService();
+        if (serverService == null) { return null; }
+
+        long now = System.currentTimeMillis();
+        Set<String> targets = new HashSet<>();
+        for (SyncServer server : serverService.getSyncServers()) {
+            String name = server.getName().toLowerCase();
+            if (name.equals(serverName)) { continue; }
+            if (!server.isOnline()) {
+                // Forget servers that went offline
+                summaries.remove(name);
+                continue;
+            }
+
+            @Nullable Summary summary = summaries.get(name);
+            if (summary == null || now - summary.receivedAt > MAX_AGE_MS) {
+                // We can't tell what this server has cached
+                return null;
+            }
+            if (summary.filter.mightContain(key)) {
+                targets.add(name);
+            }
+        }
+        return targets;
+    }
+}
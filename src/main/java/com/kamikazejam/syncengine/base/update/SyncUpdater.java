@@ -8,26 +8,51 @@ import com.kamikazejam.syncengine.base.Service;
 import com.kamikazejam.syncengine.base.Sync;
 import com.kamikazejam.syncengine.connections.redis.RedisService;
 import com.kamikazejam.syncengine.server.ServerService;
+import com.kamikazejam.syncengine.util.JacksonUtil;
+import com.kamikazejam.syncengine.util.PayloadCodec;
+import org.bukkit.Bukkit;
 import org.bukkit.plugin.IllegalPluginAccessException;
+import org.bukkit.scheduler.BukkitTask;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Objects;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class does nothing unless we have a RedisService (NETWORKED mode)
+ * Each updater has its own channel, scoped to this server's sync-group and the cache, so Redis only delivers
+ *  updates to servers that have this cache in the same group (no other packets are received or decoded).
  */
 public abstract class SyncUpdater<K, X extends Sync<K>> implements Service {
 
     private boolean running = false;
 
     protected final Cache<K, X> cache;
-    protected final String channelName;
+    protected final String channelPrefix;
+    // Set when subscribing, requires the ServerService for this server's sync-group
+    protected String channelName = null;
     protected RedisChannel<UpdatePacket> channel = null;
 
-    public SyncUpdater(Cache<K, X> cache, String channel) {
+    // Pending outbound updates (identifier -> latest entry), flushed as one packet per tick or per batch size
+    private final Map<String, UpdateEntry> pending = new LinkedHashMap<>();
+    private @Nullable BukkitTask flushTask = null;
+    // In-flight database pulls (key -> newest version requested while pulling)
+    private final Map<K, Long> pulls = new ConcurrentHashMap<>();
+    private static final int PULL_MAX_ATTEMPTS = 3;
+    private static final long PULL_BACKOFF_MS = 50L;
+
+    // Only set while interest routing is enabled (see InterestTracker#isEnabled)
+    private @Nullable InterestTracker<K, X> interest = null;
+    // Other channels we publish to (by name), i.e. the channels of servers that updates are routed to
+    private final Map<String, RedisChannel<UpdatePacket>> nodeChannels = new ConcurrentHashMap<>();
+    // Set while using the Redis Streams transport (see UpdateStreams#isEnabled), the streams we read from
+    private boolean useStreams = false;
+    private final Set<String> streamNames = ConcurrentHashMap.newKeySet();
+
+    public SyncUpdater(Cache<K, X> cache, String channelPrefix) {
         this.cache = cache;
-        this.channelName = channel;
+        this.channelPrefix = channelPrefix;
     }
 
     // ----------------------------------------------------- //
@@ -51,10 +76,19 @@ public abstract class SyncUpdater<K, X extends Sync<K>> implements Service {
             return running = true;
         }
 
-        if (!subscribe(redisService)) {
+        this.channelName = getChannelName(serverService);
+        this.useStreams = UpdateStreams.isEnabled();
+        if (InterestTracker.isEnabled()) {
+            this.interest = new InterestTracker<>(cache, serverService.getThisServer().getName());
+        }
+        if (!subscribe(redisService, serverService)) {
             cache.getLoggerService().info("Failed to subscribe to channel " + this.channelName + " in SyncUpdater for cache: " + cache.getName());
             return false;
         }
+        if (interest != null) {
+            interest.start(redisService, this.channelName + "-interest");
+        }
+        this.flushTask = Bukkit.getScheduler().runTaskTimerAsynchronously(cache.getPlugin(), this::tick, 1L, 1L);
         return running = true;
     }
 
@@ -62,6 +96,18 @@ public abstract class SyncUpdater<K, X extends Sync<K>> implements Service {
     @SuppressWarnings("all")
     public final boolean shutdown() {
         Preconditions.checkState(running, "SyncUpdater is not running for cache: " + cache.getName());
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        // Publish anything still buffered before we stop
+        this.flush(false);
+        if (interest != null) {
+            interest.shutdown();
+            interest = null;
+        }
+        streamNames.forEach(UpdateStreams::unregister);
+        streamNames.clear();
         running = false;
         return postShutdown();
     }
@@ -79,27 +125,66 @@ public abstract class SyncUpdater<K, X extends Sync<K>> implements Service {
     /**
      * Subscribe to redis so we can receive updates, can't call this unless we are in NETWORKED mode
      */
-    private boolean subscribe(@NotNull RedisService redis) {
-        if (this.channel == null) {
-            this.channel = redis.getApi().registerChannel(UpdatePacket.class, this.channelName);
+    private boolean subscribe(@NotNull RedisService redis, @NotNull ServerService serverService) {
+        // Listen for messages on this channel (only this sync-group and cache publish to it)
+        this.listen(redis, this.channelName);
+
+        // With interest routing, updates for keys we hold are also sent to our own channel
+        if (interest != null) {
+            this.listen(redis, getNodeChannelName(serverService.getThisServer().getName()));
         }
+        return true;
+    }
 
-        // Listen for messages on this channel
-        channel.subscribe((c, packet) -> {
-            // Require that this redis message is for our sync-group
-            ServerService service = Objects.requireNonNull(EngineSource.getServerService());
-            String sourceGroup = packet.getSourceGroup();
-            if (!service.getThisServer().getGroup().equalsIgnoreCase(sourceGroup)) { return; }
+    private void listen(@NotNull RedisService redis, @NotNull String name) {
+        if (useStreams) {
+            UpdateStreams.register(name, this::onPacket, this::reloadCached);
+            streamNames.add(name);
+            return;
+        }
+        RedisChannel<UpdatePacket> c = redis.getApi().registerChannel(UpdatePacket.class, name);
+        if (name.equals(this.channelName)) {
+            this.channel = c;
+        }
+        c.subscribe((ch, packet) -> this.onPacket(packet));
+    }
 
-            if (packet.isForSyncUpdater()) {
-                // Only message within SyncUpdater is an update (PUSH) request
-                receiveUpdateRequest(packet);
-            } else {
-                // Send to super class for processing
-                handleUpdateType(packet);
-            }
+    /**
+     * Called when updates were lost (trimmed from a stream before we could read them), reloads every cached Sync
+     */
+    private void reloadCached() {
+        cache.getLoggerService().info("Missed updates for cache: " + cache.getName() + ", reloading cached Syncs");
+        cache.runAsync(() -> {
+            List<K> keys = new ArrayList<>(cache.getLocalStore().getKeys());
+            if (keys.isEmpty()) { return; }
+            cache.getDatabaseStore().getMany(keys).forEach((key, dbSync) -> {
+                if (cache.getFromCache(key).isPresent()) {
+                    applyLoaded(dbSync);
+                }
+            });
         });
-        return true;
+    }
+
+    private void onPacket(@NotNull UpdatePacket packet) {
+        if (packet.isForSyncUpdater()) {
+            // Only message within SyncUpdater is an update (PUSH) request
+            receiveUpdateRequest(packet);
+        } else {
+            // Send to super class for processing
+            handleUpdateType(packet);
+        }
+    }
+
+    private @NotNull String getNodeChannelName(@NotNull String serverName) {
+        return this.channelName + "-" + serverName.toLowerCase();
+    }
+
+    /**
+     * @return The channel for this cache within this server's sync-group
+     */
+    private @NotNull String getChannelName(@NotNull ServerService serverService) {
+        String group = serverService.getThisServer().getGroup().toLowerCase();
+        return this.channelPrefix + "-" + group + "-" + cache.getName();
     }
 
     // Receives a PUSH call from another server
@@ -110,32 +195,38 @@ public abstract class SyncUpdater<K, X extends Sync<K>> implements Service {
             return;
         }
 
-        try {
-            // Verify document keys
-            String sourceServer = packet.getSourceServer();
-            String sourceGroup = packet.getSourceGroup();
-            String identifierString = packet.getIdentifier();
-            UpdateTask task = packet.getTask();
-            if (sourceServer == null || identifierString == null) {
-                cache.getLoggerService().info("Source Server or Identifier were null during receiveUpdateRequest in SyncUpdater for packet: " + packet.getIdentifier());
-                return;
-            }
+        // Verify document keys
+        String sourceServer = packet.getSourceServer();
+        if (sourceServer == null) {
+            cache.getLoggerService().info("Source Server was null during receiveUpdateRequest in SyncUpdater for packet: " + packet.getIdentifier());
+            return;
+        }
+        // As long as the source server wasn't this one (the channel already guarantees the sync group)
+        if (sourceServer.equalsIgnoreCase(serverService.getThisServer().getName())) { return; }
 
-            // As long as the source server wasn't this one
-            if (sourceServer.equalsIgnoreCase(serverService.getThisServer().getName())) { return; }
-            // And the sync group is the same
-            if (!sourceGroup.equalsIgnoreCase(serverService.getThisServer().getGroup())) { return; }
+        @Nullable Map<String, UpdateEntry> updates = packet.getEntries();
+        if (updates == null) {
+            cache.getLoggerService().info("Identifier or Task were null during receiveUpdateRequest in SyncUpdater from: " + sourceServer);
+            return;
+        }
+        updates.forEach(this::receiveUpdate);
+    }
 
+    private void receiveUpdate(@NotNull String identifierString, @NotNull UpdateEntry entry) {
+        try {
             // Perform the desired task
             final K identifier = cache.keyFromString(identifierString);
-            switch (task) {
+            switch (entry.getTask()) {
                 case PULL_FROM_STORE:
-                    if (cache.isCached(identifier)) {
-                        // Using getFromDatabase triggers Sync.cacheCopy, as intended
-                        cache.runAsync(() -> cache.getFromDatabase(identifier, true).ifPresent(sync -> {
-                            cache.getLoggerService().debug("Received update request in SyncUpdater for " + cache.getName() + ":" + cache.keyToString(sync.getId()) + " version: " + sync.getVersion());
-                            cache.cache(sync);
-                        }));
+                    if (entry.hasState()) {
+                        // The saver sent the saved state, apply it without reading the database
+                        cache.getFromCache(identifier).ifPresent(sync -> applyState(sync, entry));
+                    } else {
+                        // Only pull if we have this Sync cached, and our copy is older than the saved version
+                        cache.getFromCache(identifier).ifPresent(sync -> {
+                            if (entry.getVersion() >= 0 && sync.getVersion() >= entry.getVersion()) { return; }
+                            pull(identifier, entry.getVersion());
+                        });
                     }
                     break;
                 case DELETE_AND_INVALIDATE:
@@ -153,19 +244,122 @@ public abstract class SyncUpdater<K, X extends Sync<K>> implements Service {
             if (!EngineSource.get().isEnabled()) {
                 return;
             }
-            cache.getLoggerService().info(e, "Error2 with received update request in SyncUpdater for PUSH: " + packet.getIdentifier());
+            cache.getLoggerService().info(e, "Error2 with received update request in SyncUpdater for PUSH: " + identifierString);
+
+        } catch (Exception ex) {
+            cache.getLoggerService().info(ex, "Error with received update request in SyncUpdater for PUSH: " + identifierString);
+        }
+    }
+
+    /**
+     * Pull a Sync from the database, coalescing concurrent requests for the same key into one in-flight read.
+     * Requests received during a read only raise the version it must reach, the read repeats (with a backoff) if it
+     *  loaded an older one. After {@link #PULL_MAX_ATTEMPTS} reads, the last from the primary, the pull ends with what it has.
+     */
+    private void pull(@NotNull K identifier, long version) {
+        boolean[] started = { false };
+        pulls.compute(identifier, (k, v) -> {
+            if (v == null) {
+                started[0] = true;
+                return version;
+            }
+            return Math.max(v, version);
+        });
+        if (!started[0]) { return; }
 
+        try {
+            cache.runAsync(() -> runPull(identifier));
         } catch (Exception ex) {
-            cache.getLoggerService().info(ex, "Error with received update request in SyncUpdater for PUSH: " + packet.getIdentifier());
+            pulls.remove(identifier);
+            throw ex;
+        }
+    }
+
+    private void runPull(@NotNull K identifier) {
+        try {
+            for (int attempt = 1; ; attempt++) {
+                // The last attempt reads from the primary, a lagging secondary can't serve it
+                final boolean last = attempt >= PULL_MAX_ATTEMPTS;
+                // Both reads trigger Sync.cacheCopy, as intended
+                Optional<X> o = last ? cache.getDatabaseStore().getFromPrimary(identifier) : cache.getFromDatabase(identifier, false);
+                long loaded = o.map(sync -> {
+                    cache.getLoggerService().debug("Received update request in SyncUpdater for " + cache.getName() + ":" + cache.keyToString(sync.getId()) + " version: " + sync.getVersion());
+                    return applyLoaded(sync);
+                }).orElse(Long.MAX_VALUE); // Deleted, nothing more to pull
+
+                // Finish unless a newer version was requested than the one we loaded
+                @Nullable Long remaining = pulls.compute(identifier, (k, v) -> (last || v == null || v <= loaded) ? null : v);
+                if (remaining == null) {
+                    if (last && loaded < Long.MAX_VALUE) {
+                        cache.getLoggerService().debug("Pull for " + cache.getName() + ":" + cache.keyToString(identifier) + " ended at version " + loaded);
+                    }
+                    return;
+                }
+                // Give the secondary time to catch up
+                Thread.sleep(PULL_BACKOFF_MS * attempt);
+            }
+        } catch (InterruptedException ex) {
+            pulls.remove(identifier);
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            pulls.remove(identifier);
+            cache.getLoggerService().info(ex, "Error pulling Sync in SyncUpdater for " + cache.getName() + ":" + cache.keyToString(identifier));
+        }
+    }
+
+    /**
+     * Apply a Sync read from the database to the cached Sync if it is newer (or cache it, if we don't have it)
+     * @return The version of the cached Sync afterwards
+     */
+    private long applyLoaded(@NotNull X dbSync) {
+        Optional<X> local = cache.getFromCache(dbSync.getId());
+        if (local.isEmpty()) {
+            cache.cache(dbSync);
+            return dbSync.getVersion();
+        }
+
+        X sync = local.get();
+        // Lock the Sync like the save path does, so we never apply a state in the middle of a local save
+        synchronized (sync) {
+            // A lagging secondary can return an older copy than ours, there is nothing to apply
+            if (dbSync.getVersion() <= sync.getVersion()) { return sync.getVersion(); }
+            cache.updateSyncFromNewer(sync, dbSync);
+            // The cached Sync now matches the database, keep the copy for VersionMismatchException handling
+            if (dbSync.hasCachedCopy()) {
+                sync.setCachedCopy(dbSync.getCachedCopy());
+            }
+            cache.cacheIndexes(sync, true);
+            return sync.getVersion();
+        }
+    }
+
+    /**
+     * Apply a saved state received from another server to the cached Sync (if it is newer)
+     */
+    private void applyState(@NotNull X sync, @NotNull UpdateEntry entry) {
+        if (entry.getVersion() <= sync.getVersion()) { return; }
+
+        X update = JacksonUtil.fromJson(cache.getSyncClass(), entry.decodeState());
+        update.setCache(cache);
+        // Lock the Sync like the save path does, so we never apply a state in the middle of a local save
+        synchronized (sync) {
+            if (entry.getVersion() <= sync.getVersion()) { return; }
+            cache.updateSyncFromNewer(sync, update);
+            // The cached Sync now matches the database, keep the copy for VersionMismatchException handling
+            sync.cacheCopy();
+            cache.cacheIndexes(sync, true);
         }
+        cache.getLoggerService().debug("Received state update in SyncUpdater for " + cache.getName() + ":" + cache.keyToString(sync.getId()) + " version: " + sync.getVersion());
     }
-    
-    
-    
-    
 
-    // Default: force=false, async=true
-    public final boolean pushUpdate(@NotNull K syncId, @NotNull UpdateTask task, boolean async) {
+    /**
+     * Queue an update for the other servers. Updates are coalesced per Sync (the latest task wins), and
+     *  published as one packet per tick, or as soon as {@link #getUpdateBatchSize()} Syncs are pending.
+     * @param saved The Sync that was saved (for PULL_FROM_STORE), its saved state is sent with the update if it is
+     *              at most {@link #getMaxStateBytes()} bytes once encoded, otherwise receivers pull from the database.
+     * @param async False to publish immediately on this thread (with anything else pending), i.e. while disabling
+     */
+    public final boolean pushUpdate(@NotNull K syncId, @NotNull UpdateTask task, @Nullable X saved, boolean async) {
         @Nullable RedisService redis = EngineSource.getRedisService();
         @Nullable ServerService serverService = EngineSource.getServerService();
         if (redis == null || serverService == null) {
@@ -173,34 +367,159 @@ public abstract class SyncUpdater<K, X extends Sync<K>> implements Service {
             return true;
         }
 
+        Preconditions.checkNotNull(syncId, "Sync Key cannot be null in SyncUpdater (pushUpdate)");
+        UpdateEntry entry = createEntry(task, saved);
+        boolean full;
+        synchronized (pending) {
+            // Remove first, so the key moves to the end with its latest task
+            pending.remove(cache.keyToString(syncId));
+            pending.put(cache.keyToString(syncId), entry);
+            full = pending.size() >= getUpdateBatchSize();
+        }
+        if (!async || full || flushTask == null) {
+            return this.flush(async);
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private @NotNull UpdateEntry createEntry(@NotNull UpdateTask task, @Nullable X saved) {
+        if (task != UpdateTask.PULL_FROM_STORE || saved == null) {
+            return new UpdateEntry(task, -1, null);
+        }
+        // Always send the saved version, so receivers can skip the pull if they are already current
+        long version = saved.getVersion();
+        int maxBytes = getMaxStateBytes();
+        // The saved copy was decoded from the document we wrote (the Sync itself may already have newer, unsaved changes)
+        @Nullable X copy = (X) saved.getSavedCopy();
+        if (maxBytes <= 0 || copy == null || copy.getVersion() != version) {
+            return new UpdateEntry(task, version, null);
+        }
+        byte[] state = PayloadCodec.encode(JacksonUtil.toJson(copy));
+        if (state.length > maxBytes) {
+            // Too large to send, receivers will pull from the database
+            return new UpdateEntry(task, version, null);
+        }
+        return new UpdateEntry(task, version, state);
+    }
+
+    /**
+     * Publish all pending updates in one packet
+     * @return If the publish succeeded (or there was nothing to publish)
+     */
+    private boolean flush(boolean async) {
+        Map<String, UpdateEntry> updates;
+        synchronized (pending) {
+            if (pending.isEmpty()) { return true; }
+            updates = new LinkedHashMap<>(pending);
+            pending.clear();
+        }
+
         try {
-            Preconditions.checkNotNull(syncId, "Sync Key cannot be null in SyncUpdater (pushUpdate)");
-            UpdatePacket packet = createPacket(syncId, task);
-            packet.setForSyncUpdater(true);
-            channel.publish(packet, !async);
+            @Nullable InterestTracker<K, X> tracker = this.interest;
+            if (tracker == null) {
+                this.publish(channelName, updates, async);
+            } else {
+                this.publishRouted(tracker, updates, async);
+            }
             return true;
         } catch (IllegalPluginAccessException e) {
             // Try again sync
             if (async) {
-                return this.pushUpdate(syncId, task, false);
+                requeue(updates);
+                return this.flush(false);
             }
             return false;
         } catch (Exception ex) {
-            cache.getLoggerService().info(ex, "Failed to push update from SyncUpdater for Sync: " + cache.keyToString(syncId));
+            cache.getLoggerService().info(ex, "Failed to push " + updates.size() + " updates from SyncUpdater for cache: " + cache.getName());
             return false;
         }
     }
 
-    private @NotNull UpdatePacket createPacket(@NotNull K identifier, @NotNull UpdateTask task) {
+    private void publish(@NotNull String target, @NotNull Map<String, UpdateEntry> updates, boolean async) {
+        UpdatePacket packet = createPacket(updates);
+        packet.setForSyncUpdater(true);
+        if (useStreams) {
+            UpdateStreams.publish(target, packet);
+            return;
+        }
+
+        RedisChannel<UpdatePacket> c = (target.equals(channelName) && channel != null) ? channel : nodeChannels.computeIfAbsent(target, name ->
+                Objects.requireNonNull(EngineSource.getRedisService()).getApi().registerChannel(UpdatePacket.class, name));
+        c.publish(packet, !async);
+    }
+
+    /**
+     * Send each update only to the servers that might have the Sync cached, or broadcast it if we can't tell
+     */
+    private void publishRouted(@NotNull InterestTracker<K, X> tracker, @NotNull Map<String, UpdateEntry> updates, boolean async) {
+        Map<String, UpdateEntry> broadcast = new LinkedHashMap<>();
+        Map<String, Map<String, UpdateEntry>> routed = new HashMap<>();
+        updates.forEach((key, entry) -> {
+            @Nullable Set<String> targets = tracker.getTargets(key);
+            if (targets == null) {
+                broadcast.put(key, entry);
+                return;
+            }
+            // No targets -> no other server has (or is loading) this Sync, nothing to send
+            targets.forEach(server -> routed.computeIfAbsent(server, k -> new LinkedHashMap<>()).put(key, entry));
+        });
+
+        if (!broadcast.isEmpty()) {
+            this.publish(channelName, broadcast, async);
+        }
+        routed.forEach((server, entries) -> this.publish(getNodeChannelName(server), entries, async));
+    }
+
+    /**
+     * Add keys to our interest summary before they are loaded (see {@link InterestTracker#reserve(Collection)})
+     */
+    public void reserveInterest(@NotNull Collection<K> keys) {
+        @Nullable InterestTracker<K, X> tracker = this.interest;
+        if (tracker != null) {
+            tracker.reserve(keys);
+        }
+    }
+
+    private void tick() {
+        @Nullable InterestTracker<K, X> tracker = this.interest;
+        if (tracker != null) {
+            tracker.tick();
+        }
+        this.flush(true);
+    }
+
+    // Put updates back without replacing newer tasks queued since they were taken
+    private void requeue(@NotNull Map<String, UpdateEntry> updates) {
+        synchronized (pending) {
+            updates.forEach(pending::putIfAbsent);
+        }
+    }
+
+    private @NotNull UpdatePacket createPacket(@NotNull Map<String, UpdateEntry> updates) {
         ServerService serverService = Objects.requireNonNull(EngineSource.getServerService());
+        String group = serverService.getThisServer().getGroup();
+        String server = serverService.getThisServer().getName();
 
-        return new UpdatePacket(
-                serverService.getThisServer().getGroup(),
-                serverService.getThisServer().getName(),
-                cache.keyToString(identifier),
-                task,
-                false
-        );
+        if (updates.size() == 1) {
+            Map.Entry<String, UpdateEntry> entry = updates.entrySet().iterator().next();
+            return new UpdatePacket(group, server, entry.getKey(), entry.getValue(), false);
+        }
+        return new UpdatePacket(group, server, updates, false);
+    }
+
+    /**
+     * @return The max encoded size of a saved state sent with an update (0 to always pull from the database)
+     */
+    public static int getMaxStateBytes() {
+        return EngineSource.getConfig().getInt("updateStateMaxBytes", 16384);
+    }
+
+    /**
+     * @return The max pending updates before a flush, without waiting for the next tick
+     */
+    public static int getUpdateBatchSize() {
+        return Math.max(1, EngineSource.getConfig().getInt("updateBatchSize", 500));
     }
 
     /**
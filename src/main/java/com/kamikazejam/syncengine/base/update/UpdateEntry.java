@@ -0,0 +1,37 @@
+package com.kamikazejam.syncengine.base.update;
+
+import com.kamikazejam.syncengine.util.PayloadCodec;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+
+/**
+ * One update for a Sync. PULL_FROM_STORE updates carry the saved version (-1 if unknown), so receivers that are
+ *  already current skip the pull. They can also carry the saved state (json), which receivers apply directly
+ *  instead of reading the Sync from the database.
+ */
+@Getter @SuppressWarnings("unused")
+public class UpdateEntry {
+    private UpdateTask task;
+    private long version = -1;
+    // Encoded with the PayloadCodec
+    private byte @Nullable [] state;
+
+    public UpdateEntry() {}
+    public UpdateEntry(@NotNull UpdateTask task, long version, byte @Nullable [] state) {
+        this.task = task;
+        this.version = version;
+        this.state = state;
+    }
+
+    public boolean hasState() {
+        return state != null && version >= 0;
+    }
+
+    // Not a bean getter, so the packet mapper doesn't serialize the decoded state alongside the payload
+    public @NotNull String decodeState() {
+        return PayloadCodec.decode(Objects.requireNonNull(state));
+    }
+}
@@ -1,15 +1,26 @@
 package com.kamikazejam.syncengine.base.update;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Getter;
 import lombok.Setter;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.Map;
+
+/**
+ * Carries either a single update (identifier + task), or a batch of coalesced updates (identifier -> entry).
+ */
 @Getter @SuppressWarnings("unused")
 public class UpdatePacket {
     private String sourceGroup;
     private String sourceServer;
-    private String identifier;
-    private UpdateTask task;
+    private @Nullable String identifier;
+    private @Nullable UpdateTask task;
+    // Saved state of a single update (see UpdateEntry)
+    private long version = -1;
+    private byte @Nullable [] state;
+    private @Nullable Map<String, UpdateEntry> updates;
     @Setter
     private boolean forSyncUpdater;
 
@@ -21,4 +32,25 @@ public class UpdatePacket {
         this.task = task;
         this.forSyncUpdater = forSyncUpdater;
     }
+    public UpdatePacket(@NotNull String sourceGroup, @NotNull String sourceServer, @NotNull String identifier, @NotNull UpdateEntry entry, boolean forSyncUpdater) {
+        this(sourceGroup, sourceServer, identifier, entry.getTask(), forSyncUpdater);
+        this.version = entry.getVersion();
+        this.state = entry.getState();
+    }
+    public UpdatePacket(@NotNull String sourceGroup, @NotNull String sourceServer, @NotNull Map<String, UpdateEntry> updates, boolean forSyncUpdater) {
+        this.sourceGroup = sourceGroup;
+        this.sourceServer = sourceServer;
+        this.updates = updates;
+        this.forSyncUpdater = forSyncUpdater;
+    }
+
+    /**
+     * @return Every update in this packet (identifier -> entry), or null if the packet is malformed
+     */
+    @JsonIgnore
+    public @Nullable Map<String, UpdateEntry> getEntries() {
+        if (updates != null) { return updates; }
+        if (identifier == null || task == null) { return null; }
+        return Map.of(identifier, new UpdateEntry(task, version, state));
+    }
 }
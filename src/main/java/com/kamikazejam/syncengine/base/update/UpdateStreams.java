@@ -0,0 +1,180 @@
+package com.kamikazejam.syncengine.base.update;
+
+import com.kamikazejam.kamicommon.lettuce.core.Limit;
+import com.kamikazejam.kamicommon.lettuce.core.Range;
+import com.kamikazejam.kamicommon.lettuce.core.StreamMessage;
+import com.kamikazejam.kamicommon.lettuce.core.XAddArgs;
+import com.kamikazejam.kamicommon.lettuce.core.XReadArgs;
+import com.kamikazejam.kamicommon.lettuce.core.api.sync.RedisCommands;
+import com.kamikazejam.syncengine.EngineSource;
+import com.kamikazejam.syncengine.connections.redis.RedisService;
+import com.kamikazejam.syncengine.util.JacksonUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * The Redis Streams transport for {@link UpdatePacket}s (enabled with 'updateTransport: STREAMS').
+ * Unlike pub/sub, packets are kept in a stream per channel (trimmed to about 'updateStreamMaxLength' entries),
+ *  and this server tracks the last id it read from each stream, so packets published while we were disconnected
+ *  are replayed once Redis is reachable again. If the missed packets were already trimmed, the stream's gap handler
+ *  is called instead (the updater then reloads its cached Syncs).
+ * Each publish refreshes the stream's TTL ('updateStreamTtlSeconds'), so streams nobody writes to any more (such as
+ *  those of servers that left the group) expire.
+ * All streams are read with a single non-blocking XREAD per tick, since blocking reads would stall the shared connection.
+ */
+public class UpdateStreams {
+    private static final String FIELD = "p";
+    private static final int READ_COUNT = 1000;
+
+    private static class Registration {
+        private final @NotNull Consumer<UpdatePacket> handler;
+        private final @NotNull Runnable onGap;
+        private volatile @NotNull String lastId;
+
+        private Registration(@NotNull Consumer<UpdatePacket> handler, @NotNull Runnable onGap, @NotNull String lastId) {
+            this.handler = handler;
+            this.onGap = onGap;
+            this.lastId = lastId;
+        }
+    }
+
+    private static final Map<String, Registration> streams = new ConcurrentHashMap<>();
+    private static final AtomicBoolean polling = new AtomicBoolean(false);
+    private static volatile boolean failed = false;
+    private static @Nullable BukkitTask task = null;
+
+    /**
+     * @return If update packets should use Redis Streams instead of pub/sub
+     */
+    public static boolean isEnabled() {
+        return "STREAMS".equalsIgnoreCase(EngineSource.getConfig().getString("updateTransport", "PUBSUB"));
+    }
+
+    /**
+     * Start reading a stream from its current end
+     */
+    public static synchronized void register(@NotNull String stream, @NotNull Consumer<UpdatePacket> handler, @NotNull Runnable onGap) {
+        streams.put(stream, new Registration(handler, onGap, getLatestId(stream)));
+        if (task == null) {
+            task = Bukkit.getScheduler().runTaskTimerAsynchronously(EngineSource.get(), UpdateStreams::poll, 1L, 1L);
+        }
+    }
+
+    public static synchronized void unregister(@NotNull String stream) {
+        streams.remove(stream);
+        if (streams.isEmpty() && task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    public static void publish(@NotNull String stream, @NotNull UpdatePacket packet) {
+        XAddArgs args = new XAddArgs().maxlen(getMaxLength()).approximateTrimming();
+        RedisCommands<String, String> commands = commands();
+        commands.xadd(stream, args, Map.of(FIELD, JacksonUtil.serialize(packet)));
+        commands.expire(stream, getTtlSeconds());
+    }
+
+    // ----------------------------------------------------- //
+    //                        Reading                        //
+    // ----------------------------------------------------- //
+    private static void poll() {
+        if (streams.isEmpty() || !polling.compareAndSet(false, true)) { return; }
+        try {
+            if (failed) {
+                // We couldn't read for a while, check that the entries we missed are still in the streams
+                checkGaps();
+                failed = false;
+            }
+
+            @SuppressWarnings("unchecked")
+            XReadArgs.StreamOffset<String>[] offsets = streams.entrySet().stream()
+                    .map(e -> XReadArgs.StreamOffset.from(e.getKey(), e.getValue().lastId))
+                    .toArray(XReadArgs.StreamOffset[]::new);
+            List<StreamMessage<String, String>> messages = commands().xread(XReadArgs.Builder.count(READ_COUNT), offsets);
+            if (messages == null) { return; }
+
+            // Entries may have been trimmed since our last poll (only possible for streams with new entries)
+            Set<String> read = new HashSet<>();
+            messages.forEach(message -> read.add(message.getStream()));
+            // The gap handler covers these entries, and we already skipped past them
+            read.removeIf(stream -> !checkGap(stream));
+
+            for (StreamMessage<String, String> message : messages) {
+                @Nullable Registration registration = streams.get(message.getStream());
+                if (registration == null || !read.contains(message.getStream())) { continue; }
+                registration.lastId = message.getId();
+                @Nullable String json = message.getBody().get(FIELD);
+                if (json == null) { continue; }
+                try {
+                    registration.handler.accept(JacksonUtil.deserialize(UpdatePacket.class, json));
+                } catch (Exception ex) {
+                    EngineSource.get().getLogger().warning("Failed to handle update from stream " + message.getStream() + ": " + ex.getMessage());
+                }
+            }
+        } catch (Exception ex) {
+            if (!failed) {
+                EngineSource.get().getLogger().warning("Failed to read update streams, will replay once Redis is available: " + ex.getMessage());
+            }
+            failed = true;
+        } finally {
+            polling.set(false);
+        }
+    }
+
+    private static void checkGaps() {
+        streams.keySet().forEach(UpdateStreams::checkGap);
+    }
+
+    /**
+     * @return If the stream is intact, false if entries were trimmed before we read them (the gap handler was called)
+     */
+    private static boolean checkGap(@NotNull String stream) {
+        @Nullable Registration registration = streams.get(stream);
+        // The stream didn't exist when we started reading it, there is nothing we could have missed
+        if (registration == null || "0-0".equals(registration.lastId)) { return true; }
+
+        List<StreamMessage<String, String>> first = commands().xrange(stream, Range.create("-", "+"), Limit.from(1));
+        if (first == null || first.isEmpty()) { return true; }
+        // The oldest entry is past our last read entry, so entries we never read may have been trimmed
+        if (compareIds(first.get(0).getId(), registration.lastId) > 0) {
+            // Skip to the end, the gap handler reloads everything the skipped entries could have updated
+            registration.lastId = getLatestId(stream);
+            registration.onGap.run();
+            return false;
+        }
+        return true;
+    }
+
+    private static @NotNull String getLatestId(@NotNull String stream) {
+        List<StreamMessage<String, String>> last = commands().xrevrange(stream, Range.create("-", "+"), Limit.from(1));
+        return (last == null || last.isEmpty()) ? "0-0" : last.get(0).getId();
+    }
+
+    private static int compareIds(@NotNull String a, @NotNull String b) {
+        String[] pa = a.split("-");
+        String[] pb = b.split("-");
+        int c = Long.compare(Long.parseLong(pa[0]), Long.parseLong(pb[0]));
+        return (c != 0) ? c : Long.compare(Long.parseLong(pa[1]), Long.parseLong(pb[1]));
+    }
+
+    private static @NotNull RedisCommands<String, String> commands() {
+        RedisService redis = Objects.requireNonNull(EngineSource.getRedisService(), "RedisService");
+        return redis.getApi().getConnection().sync();
+    }
+
+    private static long getTtlSeconds() {
+        return Math.max(60, EngineSource.getConfig().getLong("updateStreamTtlSeconds", 86400));
+    }
+
+    private static long getMaxLength() {
+        return Math.max(100, EngineSource.getConfig().getLong("updateStreamMaxLength", 10000));
+    }
+}
@@ -1,12 +1,15 @@
 package com.kamikazejam.syncengine.command;
 
+import com.google.common.cache.CacheStats;
 import com.kamikazejam.kamicommon.command.KamiCommand;
 import com.kamikazejam.kamicommon.command.requirement.RequirementHasPerm;
 import com.kamikazejam.kamicommon.util.StringUtil;
 import com.kamikazejam.syncengine.EngineSource;
 import com.kamikazejam.syncengine.base.mode.SyncMode;
+import com.kamikazejam.syncengine.connections.redis.PendingRequests;
 import com.kamikazejam.syncengine.connections.redis.RedisService;
 import com.kamikazejam.syncengine.connections.storage.StorageService;
+import com.kamikazejam.syncengine.network.profile.service.NetworkProfileServiceRedis;
 import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
 import org.jetbrains.annotations.NotNull;
@@ -50,6 +53,17 @@ public class CmdNetStat extends KamiCommand {
             sender.sendMessage(StringUtil.t("&7Network Information:"));
             sender.sendMessage(StringUtil.t("  &7MongoDB Ping &8- " + pingColor(mongoPing) + (mongoPing / 1_000_000L) + "ms"));
             sender.sendMessage(StringUtil.t("  &7Redis Ping   &8- " + pingColor(redisPing) + (redisPing / 1_000_000L) + "ms"));
+            if (EngineSource.getNetworkService() instanceof NetworkProfileServiceRedis networkService) {
+                CacheStats stats = networkService.getNearCacheStats();
+                sender.sendMessage(StringUtil.t("  &7NetworkProfile Cache &8- &7" + networkService.getNearCacheSize() + " profiles, "
+                        + String.format("%.1f", stats.hitRate() * 100) + "% hits &8(" + stats.hitCount() + " hits, " + stats.missCount() + " misses)"));
+            }
+            sender.sendMessage(StringUtil.t("&7Request Latency:"));
+            for (PendingRequests<?> requests : PendingRequests.getRegistries()) {
+                sender.sendMessage(StringUtil.t("  &7" + requests.getName() + " &8- &7avg " + String.format("%.1f", requests.getAverageLatencyMs())
+                        + "ms, max " + String.format("%.1f", requests.getMaxLatencyMs()) + "ms &8(" + requests.getCompletedCount() + " completed, "
+                        + requests.getTimedOutCount() + " timed out, " + requests.getPendingCount() + " pending)"));
+            }
             sender.sendMessage(StringUtil.t("&8NOTE: For best performance, ping should be under 20ms."));
             sender.sendMessage(StringUtil.t("&8&m-------------------------------------------------------"));
         });
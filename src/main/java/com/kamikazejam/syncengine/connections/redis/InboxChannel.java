@@ -0,0 +1,54 @@
+package com.kamikazejam.syncengine.connections.redis;
+
+import com.google.common.base.Preconditions;
+import com.kamikazejam.kamicommon.redis.RedisChannel;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Point-to-point messaging over per-server channels.
+ * Each server only subscribes to its own inbox, so packets are only delivered to (and deserialized by) their addressee.
+ * @param <T> the type of packet
+ */
+@SuppressWarnings("unused")
+public class InboxChannel<T> {
+    private final @NotNull RedisService redis;
+    private final @NotNull Class<T> packetClass;
+    private final @NotNull String baseName;
+    private final Map<String, RedisChannel<T>> channels = new ConcurrentHashMap<>();
+
+    public InboxChannel(@NotNull RedisService redis, @NotNull Class<T> packetClass, @NotNull String baseName) {
+        Preconditions.checkNotNull(redis, "RedisService cannot be null");
+        this.redis = redis;
+        this.packetClass = packetClass;
+        this.baseName = baseName;
+    }
+
+    /**
+     * @return The name of the inbox channel of the given server
+     */
+    public @NotNull String getInboxName(@NotNull String serverName) {
+        return baseName + "-inbox-" + serverName.toLowerCase();
+    }
+
+    /**
+     * Subscribe to this server's inbox
+     */
+    public void subscribe(@NotNull String thisServer, @NotNull Consumer<T> handler) {
+        getChannel(thisServer).subscribe((c, packet) -> handler.accept(packet));
+    }
+
+    /**
+     * Send a packet to the inbox of the target server
+     */
+    public void publish(@NotNull String targetServer, @NotNull T packet) {
+        getChannel(targetServer).publish(packet, false);
+    }
+
+    private @NotNull RedisChannel<T> getChannel(@NotNull String serverName) {
+        return channels.computeIfAbsent(getInboxName(serverName), name -> redis.getApi().registerChannel(packetClass, name));
+    }
+}
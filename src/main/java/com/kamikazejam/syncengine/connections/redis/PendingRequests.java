@@ -0,0 +1,150 @@
+package com.kamikazejam.syncengine.connections.redis;
+
+import com.google.common.base.Preconditions;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe registry of requests awaiting a reply, keyed by their correlation id.
+ * Requests are removed when they are completed, time out, or the registry is closed, and the round trip latency of
+ * completed requests is recorded. Every registry is listed in {@link #getRegistries()} for reporting.
+ * @param <T> the type of the reply
+ */
+@SuppressWarnings("unused")
+public class PendingRequests<T> {
+    private static final Map<String, PendingRequests<?>> registries = new ConcurrentHashMap<>();
+
+    @Getter
+    private final @NotNull String name;
+    @Getter
+    private final long timeoutMs;
+    private final Map<UUID, Pending<T>> pending = new ConcurrentHashMap<>();
+
+    // Metrics
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    private PendingRequests(@NotNull String name, long timeoutMs) {
+        this.name = name;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Create a registry, and add it to the list of registries (replacing any registry with the same name)
+     */
+    public static <T> @NotNull PendingRequests<T> create(@NotNull String name, long timeout, @NotNull TimeUnit unit) {
+        Preconditions.checkNotNull(name, "Name cannot be null");
+        Preconditions.checkArgument(timeout > 0, "Timeout must be positive");
+        PendingRequests<T> requests = new PendingRequests<>(name, unit.toMillis(timeout));
+        registries.put(name, requests);
+        return requests;
+    }
+
+    public static @NotNull Collection<PendingRequests<?>> getRegistries() {
+        return Collections.unmodifiableCollection(registries.values());
+    }
+
+    // ----------------------------------------------------- //
+    //                        Requests                       //
+    // ----------------------------------------------------- //
+    /**
+     * Register a new request, it will complete exceptionally with a {@link TimeoutException} if no reply arrives in time.
+     * @return The future for the reply, completed by {@link #complete(UUID, Object)}
+     */
+    public @NotNull CompletableFuture<T> register(@NotNull UUID correlationId) {
+        Pending<T> p = new Pending<>();
+        Preconditions.checkState(pending.putIfAbsent(correlationId, p) == null, "Duplicate correlation id: " + correlationId);
+
+        p.future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS).whenComplete((v, t) -> {
+            pending.remove(correlationId, p);
+            if (t instanceof TimeoutException) {
+                timedOut.increment();
+            }
+        });
+        return p.future;
+    }
+
+    /**
+     * Complete a request with its reply
+     * @return True iff the request was pending (false if it is unknown, already completed, or timed out)
+     */
+    public boolean complete(@NotNull UUID correlationId, @Nullable T reply) {
+        @Nullable Pending<T> p = pending.remove(correlationId);
+        if (p == null) { return false; }
+
+        long nanos = System.nanoTime() - p.startNanos;
+        if (!p.future.complete(reply)) { return false; }
+        completed.increment();
+        totalLatencyNanos.addAndGet(nanos);
+        maxLatencyNanos.accumulateAndGet(nanos, Math::max);
+        return true;
+    }
+
+    /**
+     * Complete a request exceptionally (i.e. the reply was invalid)
+     * @return True iff the request was pending
+     */
+    public boolean fail(@NotNull UUID correlationId, @NotNull Throwable error) {
+        @Nullable Pending<T> p = pending.remove(correlationId);
+        return p != null && p.future.completeExceptionally(error);
+    }
+
+    /**
+     * Complete every pending request with the given reply (used on shutdown)
+     */
+    public void completeAll(@Nullable T reply) {
+        pending.values().forEach(p -> p.future.complete(reply));
+        pending.clear();
+    }
+
+    /**
+     * Remove this registry from the list of registries, and complete every pending request with the given reply
+     */
+    public void close(@Nullable T reply) {
+        registries.remove(name, this);
+        completeAll(reply);
+    }
+
+    // ----------------------------------------------------- //
+    //                        Metrics                        //
+    // ----------------------------------------------------- //
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    public long getTimedOutCount() {
+        return timedOut.sum();
+    }
+
+    public double getAverageLatencyMs() {
+        long count = completed.sum();
+        return (count == 0) ? 0D : (totalLatencyNanos.get() / 1_000_000D) / count;
+    }
+
+    public double getMaxLatencyMs() {
+        return maxLatencyNanos.get() / 1_000_000D;
+    }
+
+    private static class Pending<T> {
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final long startNanos = System.nanoTime();
+    }
+}
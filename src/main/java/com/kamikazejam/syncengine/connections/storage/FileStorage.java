@@ -1,5 +1,8 @@
 package com.kamikazejam.syncengine.connections.storage;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Preconditions;
+import com.kamikazejam.kamicommon.gson.JsonArray;
 import com.kamikazejam.kamicommon.gson.JsonElement;
 import com.kamikazejam.kamicommon.gson.JsonObject;
 import com.kamikazejam.kamicommon.gson.JsonParser;
@@ -10,7 +13,11 @@ import com.kamikazejam.syncengine.base.Sync;
 import com.kamikazejam.syncengine.base.SyncCache;
 import com.kamikazejam.syncengine.base.exception.VersionMismatchException;
 import com.kamikazejam.syncengine.base.index.IndexedField;
+import com.kamikazejam.syncengine.base.query.Aggregation;
+import com.kamikazejam.syncengine.base.query.SyncQuery;
+import com.kamikazejam.syncengine.connections.storage.file.JsonQueryEvaluator;
 import com.kamikazejam.syncengine.connections.storage.file.ThreadSafeFileIndexing;
+import com.kamikazejam.syncengine.connections.storage.iterable.PipelinedSpliterator;
 import com.kamikazejam.syncengine.connections.storage.iterable.SyncFilesIterable;
 import com.kamikazejam.syncengine.connections.storage.iterable.TransformingIterator;
 import com.kamikazejam.syncengine.util.JacksonUtil;
@@ -23,8 +30,16 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @SuppressWarnings({"unnused", "DuplicatedCode"})
 public class FileStorage extends StorageService {
@@ -55,6 +70,7 @@ public class FileStorage extends StorageService {
             @NotNull String newJson = JacksonUtil.toJson(sync);
             if (newJson.equals(json)) {
                 // It is 'saved' successfully (i.e. database has the same data)
+                sync.setCachedCopy(readCopy(cache, json));
                 return TriState.NOT_SET;
             }
 
@@ -67,7 +83,9 @@ public class FileStorage extends StorageService {
             syncJson.addProperty("version", newVersion);
 
             // Use ThreadSafeFileHandler, must obtain the json again since version field was updated
-            ThreadSafeFileHandler.writeFile(targetFile.toPath(), syncJson.toString());
+            String written = syncJson.toString();
+            ThreadSafeFileHandler.writeFile(targetFile.toPath(), written);
+            setWritten(cache, sync, readCopy(cache, written));
 
             // Cache Indexes
             cache.cacheIndexes(sync, true);
@@ -81,6 +99,12 @@ public class FileStorage extends StorageService {
         }
     }
 
+    private <K, X extends Sync<K>> @NotNull X readCopy(@NotNull Cache<K, X> cache, @NotNull String json) {
+        X copy = Objects.requireNonNull(JacksonUtil.fromJson(cache.getSyncClass(), json));
+        copy.setCache(cache);
+        return copy;
+    }
+
     public static @Nullable String readJsonFromFile(@NotNull File targetFile) throws IOException {
         if (!targetFile.exists()) { return null; }
         @Nullable String json = ThreadSafeFileHandler.readFile(targetFile.toPath());
@@ -116,6 +140,29 @@ public class FileStorage extends StorageService {
         }
     }
 
+    @Override
+    public <K, X extends Sync<K>> @NotNull Map<K, X> getMany(Cache<K, X> cache, Collection<K> keys) {
+        // Read the files concurrently, each read is handled (and logged) the same as get
+        Map<K, X> results = new ConcurrentHashMap<>();
+        keys.parallelStream().distinct().forEach(key -> get(cache, key).ifPresent(sync -> results.put(key, sync)));
+        return results;
+    }
+
+    @Override
+    public <K, X extends Sync<K>> @NotNull CompletableFuture<Optional<X>> getAsync(Cache<K, X> cache, K key) {
+        // Read the file with an AsynchronousFileChannel, only the json parsing runs on the storage executor
+        File targetFile = getTargetFile(cache, key);
+        return ThreadSafeFileHandler.readFileAsync(targetFile.toPath(), getExecutor()).thenApply(json -> {
+            if (json == null || json.isEmpty()) { return Optional.<X>empty(); }
+            Optional<X> o = Optional.ofNullable(JacksonUtil.fromJson(cache.getSyncClass(), json));
+            o.ifPresent(sync -> cache.cacheIndexes(sync, true));
+            return o;
+        }).exceptionally(t -> {
+            cache.getLoggerService().severe(t, "Failed to read file: " + targetFile.getAbsolutePath());
+            return Optional.empty();
+        });
+    }
+
     @Override
     public <K, X extends Sync<K>> long size(Cache<K, X> cache) {
         File cacheFolder = getCacheFolder(cache);
@@ -165,6 +212,43 @@ public class FileStorage extends StorageService {
         });
     }
 
+    @Override
+    public <K, X extends Sync<K>> @NotNull Stream<X> streamAll(Cache<K, X> cache, @NotNull Consumer<X> onLoad) {
+        // Ensure Directory exists
+        File cacheFolder = getCacheFolder(cache);
+        if (!cacheFolder.exists() && !cacheFolder.mkdirs()) {
+            throw new RuntimeException("Failed to create cache folder: " + cacheFolder.getAbsolutePath());
+        }
+
+        DirectoryStream<Path> paths;
+        try {
+            paths = Files.newDirectoryStream(cacheFolder.toPath());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create directory stream", e);
+        }
+
+        // Files are read and parsed on the worker threads
+        PipelinedSpliterator<Path, X> spliterator = new PipelinedSpliterator<>(paths.iterator(), path -> {
+            try {
+                @Nullable String json = readJsonFromFile(path.toFile());
+                if (json == null) { return null; }
+                X sync = JacksonUtil.fromJson(cache.getSyncClass(), json);
+                // Ensure indexes are cached
+                cache.cacheIndexes(sync, false);
+                onLoad.accept(sync);
+                return sync;
+            } catch (Throwable t) {
+                cache.getLoggerService().severe(t, "Failed to read file: " + path);
+                return null;
+            }
+        }, getStreamBatchSize(), Runtime.getRuntime().availableProcessors() * 2, () -> {
+            try {
+                paths.close();
+            } catch (IOException ignored) {}
+        });
+        return StreamSupport.stream(spliterator, true).onClose(spliterator::close);
+    }
+
     @Override
     public <K, X extends Sync<K>> Iterable<K> getKeys(Cache<K, X> cache) {
         @Nullable File[] array = getCacheFolder(cache).listFiles();
@@ -182,6 +266,68 @@ public class FileStorage extends StorageService {
         );
     }
 
+    @Override
+    public <K, X extends Sync<K>> @NotNull List<X> find(Cache<K, X> cache, @NotNull SyncQuery query) {
+        // No native queries, evaluate the json of every file in parallel
+        try (Stream<JsonNode> docs = scanJson(cache)) {
+            return JsonQueryEvaluator.apply(docs, query).map(doc -> {
+                try {
+                    X sync = JacksonUtil.getMapper().treeToValue(doc, cache.getSyncClass());
+                    // Ensure indexes are cached
+                    cache.cacheIndexes(sync, false);
+                    return sync;
+                } catch (Throwable t) {
+                    cache.getLoggerService().severe(t, "Failed to parse Sync json in cache: " + cache.getName());
+                    return null;
+                }
+            }).filter(Objects::nonNull).toList();
+        }
+    }
+
+    @Override
+    public <K, X extends Sync<K>> long count(Cache<K, X> cache, @NotNull SyncQuery query) {
+        try (Stream<JsonNode> docs = scanJson(cache)) {
+            return JsonQueryEvaluator.apply(docs, query).count();
+        }
+    }
+
+    @Override
+    public <K, X extends Sync<K>> @Nullable Double aggregate(Cache<K, X> cache, @NotNull SyncQuery query, @NotNull Aggregation aggregation, @Nullable String valueField) {
+        Preconditions.checkArgument(aggregation == Aggregation.COUNT || valueField != null, "valueField is required for " + aggregation);
+        try (Stream<JsonNode> docs = scanJson(cache)) {
+            return JsonQueryEvaluator.aggregate(JsonQueryEvaluator.apply(docs, query).toList(), aggregation, valueField);
+        }
+    }
+
+    @Override
+    public <K, X extends Sync<K>> @NotNull Map<Object, Double> groupBy(Cache<K, X> cache, @NotNull SyncQuery query, @NotNull String groupField, @NotNull Aggregation aggregation, @Nullable String valueField) {
+        Preconditions.checkArgument(aggregation == Aggregation.COUNT || valueField != null, "valueField is required for " + aggregation);
+        try (Stream<JsonNode> docs = scanJson(cache)) {
+            return JsonQueryEvaluator.groupBy(JsonQueryEvaluator.apply(docs, query).toList(), groupField, aggregation, valueField);
+        }
+    }
+
+    /**
+     * @return A parallel Stream of the json tree of every Sync file in the cache (must be closed)
+     */
+    private <K, X extends Sync<K>> @NotNull Stream<JsonNode> scanJson(Cache<K, X> cache) {
+        File cacheFolder = getCacheFolder(cache);
+        if (!cacheFolder.exists()) { return Stream.empty(); }
+        try {
+            return Files.list(cacheFolder.toPath()).parallel().map(path -> {
+                try {
+                    @Nullable String json = readJsonFromFile(path.toFile());
+                    return (json == null) ? null : JacksonUtil.getMapper().readTree(json);
+                } catch (Throwable t) {
+                    cache.getLoggerService().severe(t, "Failed to read file: " + path);
+                    return null;
+                }
+            }).filter(Objects::nonNull);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to list cache folder: " + cacheFolder.getAbsolutePath(), e);
+        }
+    }
+
     @Override
     public boolean canCache() {
         return true;
@@ -206,6 +352,7 @@ public class FileStorage extends StorageService {
 
     @Override
     public boolean shutdown() {
+        this.shutdownExecutor();
         this.running = false;
         return true;
     }
@@ -267,21 +414,30 @@ public class FileStorage extends StorageService {
         this.invalidateIndexes(cache, sync.getId(), false);
 
         // Step 2 - Modify the Mappings
+        String syncId = cache.keyToString(sync.getId());
         ThreadSafeFileIndexing.consumeBoth(cache, (mappings, cacheIndexes) -> {
+            @Nullable JsonNode json = null;
             // Update each index's mappings
             for (IndexedField<?, ?> index : cacheIndexes) {
-                Map<String, String> indexCache = mappings.computeIfAbsent(index.getName(), k -> new HashMap<>());
+                Map<String, Set<String>> indexCache = mappings.computeIfAbsent(index.getName(), k -> new HashMap<>());
 
+                // Sparse indexes (and missing values) are skipped, as are Syncs outside a partial index
                 @Nullable Object value = index.getValue(sync);
                 if (value == null) { continue; }
+                @Nullable SyncQuery partialFilter = index.getPartialFilter();
+                if (partialFilter != null) {
+                    if (json == null) { json = JacksonUtil.getMapper().valueToTree(sync); }
+                    if (!JsonQueryEvaluator.matches(json, partialFilter)) { continue; }
+                }
 
                 // Cache this field's value mapped to our Sync
-                @Nullable String old = indexCache.put(index.toString(value), cache.keyToString(sync.getId()));
-
-                // Objects.equals valid for Strings
-                if (old != null && !Objects.equals(old, cache.keyToString(sync.getId()))) {
-                    cache.getLoggerService().severe("Duplicate index value for field " + index.getName() + " in cache " + cache.getName() + " Previous Sync Id: " + old + " New Sync Id: " + sync.getId());
+                Set<String> ids = indexCache.computeIfAbsent(index.toString(value), k -> new HashSet<>());
+                if (index.isUnique() && !ids.isEmpty() && !ids.contains(syncId)) {
+                    cache.getLoggerService().severe("Duplicate index value for field " + index.getName() + " in cache " + cache.getName() + " Previous Sync Id: " + ids.iterator().next() + " New Sync Id: " + sync.getId());
+                    // Unique indexes keep the newest mapping
+                    ids.clear();
                 }
+                ids.add(syncId);
             }
         });
 
@@ -312,12 +468,20 @@ public class FileStorage extends StorageService {
             // Loop through all the registered indexes to fetch the mappings
             for (IndexedField<?, ?> index : cacheIndexes) {
                 // Grab the mappings for this index
-                Map<String, String> indexCache = indexMappings.get(index.getName());
+                Map<String, Set<String>> indexCache = indexMappings.get(index.getName());
                 if (indexCache == null) { continue; }
 
+                // Single ids are written as strings (the original format), multiple ids as an array
                 JsonObject indexJson = new JsonObject();
-                for (Map.Entry<String, String> entry : indexCache.entrySet()) {
-                    indexJson.addProperty(entry.getKey(), entry.getValue());
+                for (Map.Entry<String, Set<String>> entry : indexCache.entrySet()) {
+                    Set<String> ids = entry.getValue();
+                    if (ids.size() == 1) {
+                        indexJson.addProperty(entry.getKey(), ids.iterator().next());
+                    } else if (!ids.isEmpty()) {
+                        JsonArray array = new JsonArray();
+                        ids.forEach(array::add);
+                        indexJson.add(entry.getKey(), array);
+                    }
                 }
                 fieldJsons.put(index.getName(), indexJson);
             }
@@ -328,14 +492,22 @@ public class FileStorage extends StorageService {
 
     @Override
     public <K, X extends Sync<K>, T> @Nullable K getSyncIdByIndex(@NotNull SyncCache<K, X> cache, IndexedField<X, T> index, T value) {
-        AtomicReference<String> syncId = new AtomicReference<>();
+        try (Stream<K> ids = getSyncIdsByIndex(cache, index, value)) {
+            return ids.findFirst().orElse(null);
+        }
+    }
+
+    @Override
+    public <K, X extends Sync<K>, T> @NotNull Stream<K> getSyncIdsByIndex(@NotNull SyncCache<K, X> cache, IndexedField<X, T> index, T value) {
+        List<String> syncIds = new ArrayList<>();
         ThreadSafeFileIndexing.consumeMappings(cache, (indexMappings) -> {
-            @Nullable Map<String, String> indexCache = indexMappings.get(index.getName());
+            @Nullable Map<String, Set<String>> indexCache = indexMappings.get(index.getName());
             if (indexCache == null) { return; }
 
-            syncId.set(indexCache.get(index.toString(value)));
+            // Copy the ids, so the Stream is safe to consume outside the lock
+            syncIds.addAll(indexCache.getOrDefault(index.toString(value), Set.of()));
         });
-        return (syncId.get() == null) ? null : cache.keyFromString(syncId.get());
+        return syncIds.stream().map(cache::keyFromString);
     }
 
     @SneakyThrows
@@ -350,45 +522,42 @@ public class FileStorage extends StorageService {
 
         // 2 - Ensure maps are populated
         ThreadSafeFileIndexing.consumeMappings(cache, (mappings) -> {
-            Map<String, String> indexCache = mappings.computeIfAbsent(index.getName(), k -> new HashMap<>());
+            Map<String, Set<String>> indexCache = mappings.computeIfAbsent(index.getName(), k -> new HashMap<>());
 
-            // 3 - Parse the JSON & load caches
+            // 3 - Parse the JSON & load caches (each value is a single id, or an array of ids)
             JsonObject json = JsonParser.parseString(jsonContent).getAsJsonObject();
             for (Map.Entry<String, JsonElement> entry : json.asMap().entrySet()) {
-                String value = entry.getValue().getAsString();
-
-                // Ensure the value is a valid Sync ID
-                if (!cache.getDatabaseStore().has(cache.keyFromString(value))) {
-                    continue;
+                List<String> values = new ArrayList<>();
+                if (entry.getValue().isJsonArray()) {
+                    entry.getValue().getAsJsonArray().forEach(e -> values.add(e.getAsString()));
+                } else {
+                    values.add(entry.getValue().getAsString());
                 }
 
-                indexCache.put(entry.getKey(), value);
+                for (String value : values) {
+                    // Ensure the value is a valid Sync ID
+                    if (!cache.getDatabaseStore().has(cache.keyFromString(value))) {
+                        continue;
+                    }
+                    indexCache.computeIfAbsent(entry.getKey(), k -> new HashSet<>()).add(value);
+                }
             }
         });
     }
 
     @Override
     public <K, X extends Sync<K>> void invalidateIndexes(@NotNull SyncCache<K, X> cache, @NotNull K syncId, boolean updateFile) {
+        String id = cache.keyToString(syncId);
         // Step 1 - Modify the Mappings
         ThreadSafeFileIndexing.consumeBoth(cache, (mappings, cacheIndexes) -> {
             // Remove any data mapped to this sync
             for (IndexedField<?, ?> index : cacheIndexes) {
                 // Grab the cache for this field name
-                @Nullable Map<String, String> indexCache = mappings.get(index.getName());
+                @Nullable Map<String, Set<String>> indexCache = mappings.get(index.getName());
                 if (indexCache == null) { continue; }
 
-                // Compile a list of index mappings to remove
-                List<String> toRemove = new ArrayList<>();
-                for (Map.Entry<String, String> entry : indexCache.entrySet()) {
-                    // Only scan for mappings pointing at this Sync
-                    String k1 = entry.getValue();
-                    String k2 = cache.keyToString(syncId);
-                    // Objects.equals valid for Strings
-                    if (!Objects.equals(k1, k2)) { continue; }
-
-                    toRemove.add(entry.getKey());
-                }
-                toRemove.forEach(indexCache::remove);
+                // Remove this Sync from every value, and drop values with no Syncs left
+                indexCache.values().removeIf(ids -> ids.remove(id) && ids.isEmpty());
             }
         });
 
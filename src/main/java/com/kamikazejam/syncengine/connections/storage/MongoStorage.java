@@ -5,25 +5,43 @@ import com.kamikazejam.kamicommon.util.data.TriState;
 import com.kamikazejam.syncengine.EngineSource;
 import com.kamikazejam.syncengine.base.Cache;
 import com.kamikazejam.syncengine.base.Sync;
+import com.kamikazejam.syncengine.base.cache.ReadOptions;
 import com.kamikazejam.syncengine.base.SyncCache;
 import com.kamikazejam.syncengine.base.exception.VersionMismatchException;
 import com.kamikazejam.syncengine.base.index.IndexedField;
+import com.kamikazejam.syncengine.base.query.Aggregation;
+import com.kamikazejam.syncengine.base.query.SyncQuery;
 import com.kamikazejam.syncengine.connections.config.MongoConfig;
 import com.kamikazejam.syncengine.connections.monitor.MongoMonitor;
 import com.kamikazejam.syncengine.connections.redis.RedisService;
+import com.kamikazejam.syncengine.connections.storage.iterable.PipelinedSpliterator;
 import com.kamikazejam.syncengine.connections.storage.iterable.TransformingIterator;
+import com.kamikazejam.syncengine.connections.storage.mongo.CausalClock;
+import com.kamikazejam.syncengine.connections.storage.mongo.DocumentDiff;
+import com.kamikazejam.syncengine.connections.storage.mongo.MongoQueries;
 import com.kamikazejam.syncengine.util.JacksonUtil;
 import com.mongodb.*;
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
-import com.mongodb.client.model.Filters;
-import com.mongodb.client.model.IndexOptions;
-import com.mongodb.client.model.Projections;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.*;
+import com.mongodb.client.result.UpdateResult;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonValue;
 import org.bson.Document;
 import org.bson.UuidRepresentation;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
 import org.bson.conversions.Bson;
 import org.bukkit.plugin.Plugin;
 import org.jetbrains.annotations.NotNull;
@@ -31,6 +49,9 @@ import org.jetbrains.annotations.Nullable;
 import org.mongojack.JacksonMongoCollection;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import static com.kamikazejam.syncengine.util.JacksonUtil.ID_FIELD;
@@ -45,6 +66,11 @@ public class MongoStorage extends StorageService {
     @Setter
     private boolean mongoConnected = false;
 
+    // Max ids per $in query in getMany
+    private static final int GET_MANY_CHUNK_SIZE = 500;
+    // Max batches buffered ahead of the consumer in streamAll
+    private static final int STREAM_MAX_IN_FLIGHT = Runtime.getRuntime().availableProcessors() * 2;
+
     // MongoDB
     @Getter(AccessLevel.NONE)
     private MongoClient mongoClient = null;
@@ -80,7 +106,8 @@ public class MongoStorage extends StorageService {
             return true;
         }
 
-        // Disconnect from MongoDB
+        // Let pending async operations finish, then disconnect from MongoDB
+        this.shutdownExecutor();
         boolean mongo = this.disconnectMongo();
         this.running = false;
 
@@ -103,11 +130,16 @@ public class MongoStorage extends StorageService {
         Preconditions.checkNotNull(key);
         try {
             Bson query = Filters.eq(ID_FIELD, cache.keyToString(key));
-            Optional<X> o = Optional.ofNullable(getJackson(cache).findOne(query));
+            @Nullable BsonDocument doc;
+            try (@Nullable ClientSession session = startCausalSession(cache)) {
+                MongoCollection<BsonDocument> coll = getReadDocuments(cache, false);
+                doc = (session == null ? coll.find(query) : coll.find(session, query)).first();
+            }
+            Optional<X> o = Optional.ofNullable(doc).map(d -> fromDocument(cache, d));
             // Cache Indexes since we are loading from database
             o.ifPresent(s -> cache.cacheIndexes(s, true));
 
-            return Optional.ofNullable(getJackson(cache).findOne(query));
+            return o;
         } catch (MongoException ex) {
             cache.getLoggerService().info(ex, "MongoDB error getting Object from MongoDB Layer: " + key);
             return Optional.empty();
@@ -117,31 +149,105 @@ public class MongoStorage extends StorageService {
         }
     }
 
+    @Override
+    public @NotNull <K, X extends Sync<K>> Optional<X> getFromPrimary(Cache<K, X> cache, K key) {
+        Preconditions.checkNotNull(key);
+        try {
+            @Nullable BsonDocument doc = getDocuments(cache).find(Filters.eq(ID_FIELD, cache.keyToString(key))).first();
+            Optional<X> o = Optional.ofNullable(doc).map(d -> fromDocument(cache, d));
+            // Cache Indexes since we are loading from database
+            o.ifPresent(s -> cache.cacheIndexes(s, true));
+            return o;
+        } catch (Exception ex) {
+            cache.getLoggerService().info(ex, "Error getting Object from MongoDB primary: " + key);
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public <K, X extends Sync<K>> @NotNull Map<K, X> getMany(Cache<K, X> cache, Collection<K> keys) {
+        Preconditions.checkNotNull(keys);
+        Map<K, X> results = new ConcurrentHashMap<>();
+        List<String> ids = keys.stream().map(cache::keyToString).distinct().toList();
+        MongoCollection<BsonDocument> coll = getReadDocuments(cache, false);
+        for (int i = 0; i < ids.size(); i += GET_MANY_CHUNK_SIZE) {
+            List<String> chunk = ids.subList(i, Math.min(i + GET_MANY_CHUNK_SIZE, ids.size()));
+            try (@Nullable ClientSession session = startCausalSession(cache)) {
+                // Fetch the raw documents in one query, then decode them in parallel
+                Bson query = Filters.in(ID_FIELD, chunk);
+                List<BsonDocument> docs = (session == null ? coll.find(query) : coll.find(session, query)).into(new ArrayList<>(chunk.size()));
+                docs.parallelStream().forEach(doc -> {
+                    try {
+                        X sync = fromDocument(cache, doc);
+                        // Cache Indexes since we are loading from database
+                        cache.cacheIndexes(sync, true);
+                        results.put(sync.getId(), sync);
+                    } catch (Exception ex) {
+                        cache.getLoggerService().info(ex, "Error decoding Object from MongoDB Layer: " + doc.get(ID_FIELD));
+                    }
+                });
+            } catch (MongoException ex) {
+                cache.getLoggerService().info(ex, "MongoDB error getting " + chunk.size() + " Objects from MongoDB Layer");
+            }
+        }
+        return results;
+    }
+
     @Override
     public <K, X extends Sync<K>> @NotNull TriState save(Cache<K, X> cache, X sync) throws VersionMismatchException {
+        // Held for the whole save, so a newer state (e.g. from the ChangeStreamWatcher) can't be applied mid-write
+        synchronized (sync) {
+            return saveLocked(cache, sync);
+        }
+    }
+
+    private <K, X extends Sync<K>> @NotNull TriState saveLocked(Cache<K, X> cache, X sync) throws VersionMismatchException {
+        final long localVer = sync.getVersion();
+        @Nullable BsonValue id = null;
+        boolean written = false;
+        @Nullable ClientSession session = null;
 
         // Try saving to MongoDB with Jackson and catch/fix a host of possible errors we can receive
         try {
-            // **Optimistic Versioning**
-            //  1. Fetch the database object (to compare version)
-            //     - Use Projections to retrieve only the necessary fields
-            Bson query = Filters.eq(ID_FIELD, cache.keyToString(sync.getId()));
-            @Nullable X database = getJackson(cache).find(query).projection(Projections.include(ID_FIELD, "version")).first();
-            @Nullable Long dbVer = (database == null) ? null : database.getVersion();
-
-            // 2. If we have no changes to the json, don't bother writing (save the IO)
-            if (JacksonUtil.toJson(sync).equals(JacksonUtil.toJson(database))) {
+            sync.setVersion(localVer + 1);
+            BsonDocument doc = toDocument(cache, sync);
+            id = doc.get(ID_FIELD);
+
+            // 1. Diff against the last persisted copy (null if we don't have a usable baseline)
+            @Nullable DocumentDiff diff = diffCachedCopy(cache, sync, localVer, doc);
+            if (diff != null && diff.isEmpty()) {
+                // If we have no changes to the document, don't bother writing (save the IO)
                 return TriState.NOT_SET;
             }
+            // The new baseline, decoded from exactly the document we write
+            X writtenCopy = fromDocument(cache, doc);
 
-            // 3. Apply Optimistic Versioning (only fails with a valid, non-equal database version)
-            if (dbVer != null && dbVer != sync.getVersion()) {
-                throw new VersionMismatchException(cache, sync.getVersion(), dbVer);
+            // **Optimistic Versioning**
+            //  The version check and the write are one conditional write, filtered on both _id and version
+            Bson query = Filters.and(Filters.eq(ID_FIELD, id), Filters.eq("version", localVer));
+            MongoCollection<BsonDocument> coll = getDocuments(cache);
+            session = startCausalSession(cache);
+            if (diff == null) {
+                // 2a. No baseline (new document) -> full replacement upsert
+                //  - A document at our version is replaced
+                //  - A missing document is inserted
+                //  - A document at any other version can't match, so the upsert collides on _id (DUPLICATE_KEY)
+                replaceUpsert(coll, session, query, doc);
+            } else {
+                // 2b. Write only the changed fields
+                Bson update = diff.toUpdate(localVer + 1);
+                UpdateResult result = (session == null) ? coll.updateOne(query, update) : coll.updateOne(session, query, update);
+                if (result.getMatchedCount() == 0) {
+                    // Either the version changed, or the document was removed since we loaded it
+                    @Nullable Long dbVer = getDatabaseVersion(cache, id);
+                    if (dbVer != null) {
+                        throw new VersionMismatchException(cache, localVer, dbVer);
+                    }
+                    replaceUpsert(coll, session, Filters.eq(ID_FIELD, id), doc);
+                }
             }
-
-            // 4. Continue (Version passed, save the object)
-            sync.setVersion(sync.getVersion() + 1);
-            getJackson(cache).save(sync);
+            written = true;
+            setWritten(cache, sync, writtenCopy);
 
             // Cache Indexes
             cache.cacheIndexes(sync, true);
@@ -150,6 +256,13 @@ public class MongoStorage extends StorageService {
             // pass through
             throw v;
         } catch (MongoWriteException ex1) {
+            // A duplicate _id means the document exists at another version (only read the version in this case)
+            if (ex1.getError().getCategory() == ErrorCategory.DUPLICATE_KEY && id != null) {
+                @Nullable Long dbVer = getDatabaseVersion(cache, id);
+                if (dbVer != null && dbVer != localVer) {
+                    throw new VersionMismatchException(cache, localVer, dbVer);
+                }
+            }
             // Handle the MongoWriteException
             return TriState.byBoolean(handleMongoWriteException(ex1, cache, sync));
 
@@ -162,6 +275,170 @@ public class MongoStorage extends StorageService {
             // Handle any other exception
             cache.getLoggerService().info(expected, "Error saving Object to MongoDB Layer: " + sync.getId());
             return TriState.FALSE;
+        } finally {
+            // Roll back the version increment if the write did not happen
+            if (!written) {
+                sync.setVersion(localVer);
+            }
+            endCausalSession(cache, session);
+            if (session != null) {
+                session.close();
+            }
+        }
+    }
+
+    private void replaceUpsert(@NotNull MongoCollection<BsonDocument> coll, @Nullable ClientSession session, @NotNull Bson query, @NotNull BsonDocument doc) {
+        ReplaceOptions options = new ReplaceOptions().upsert(true);
+        if (session == null) {
+            coll.replaceOne(query, doc, options);
+        } else {
+            coll.replaceOne(session, query, doc, options);
+        }
+    }
+
+    @Override
+    public <K, X extends Sync<K>> @NotNull Map<K, TriState> saveAll(Cache<K, X> cache, Collection<X> syncs, int batchSize) {
+        Preconditions.checkArgument(batchSize > 0, "batchSize must be positive");
+        Map<K, TriState> results = new HashMap<>();
+        List<X> batch = new ArrayList<>(Math.min(batchSize, syncs.size()));
+        for (X sync : syncs) {
+            batch.add(sync);
+            if (batch.size() >= batchSize) {
+                saveBatch(cache, batch, results);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            saveBatch(cache, batch, results);
+        }
+        return results;
+    }
+
+    /**
+     * Writes one batch of Syncs with a single unordered bulkWrite, building each write the same way as
+     * {@link #save(Cache, Sync)}. Syncs we can't confirm were written are left out of the results.
+     */
+    private <K, X extends Sync<K>> void saveBatch(Cache<K, X> cache, List<X> batch, Map<K, TriState> results) {
+        // These lists are parallel to the write models (index i describes models[i])
+        List<WriteModel<BsonDocument>> models = new ArrayList<>(batch.size());
+        List<X> pending = new ArrayList<>(batch.size());
+        List<BsonValue> ids = new ArrayList<>(batch.size());
+        List<Long> versions = new ArrayList<>(batch.size());
+        List<X> copies = new ArrayList<>(batch.size());
+
+        // Each Sync is locked while it is encoded, and again while its result is applied below
+        //  (a newer state applied in between moves its version on, so we leave it alone)
+        for (X sync : batch) {
+            synchronized (sync) {
+                final long localVer = sync.getVersion();
+                try {
+                    sync.setVersion(localVer + 1);
+                    BsonDocument doc = toDocument(cache, sync);
+                    BsonValue id = doc.get(ID_FIELD);
+
+                    @Nullable DocumentDiff diff = diffCachedCopy(cache, sync, localVer, doc);
+                    if (diff != null && diff.isEmpty()) {
+                        sync.setVersion(localVer);
+                        results.put(sync.getId(), TriState.NOT_SET);
+                        continue;
+                    }
+                    X copy = fromDocument(cache, doc);
+
+                    Bson query = Filters.and(Filters.eq(ID_FIELD, id), Filters.eq("version", localVer));
+                    models.add(diff == null
+                            ? new ReplaceOneModel<>(query, doc, new ReplaceOptions().upsert(true))
+                            : new UpdateOneModel<>(query, diff.toUpdate(localVer + 1)));
+                    pending.add(sync);
+                    ids.add(id);
+                    versions.add(localVer);
+                    copies.add(copy);
+                } catch (Exception ex) {
+                    // Left for the individual save, which will log the error
+                    sync.setVersion(localVer);
+                }
+            }
+        }
+        if (models.isEmpty()) { return; }
+
+        Set<Integer> failed = new HashSet<>();
+        @Nullable BulkWriteResult result;
+        try (@Nullable ClientSession session = startCausalSession(cache)) {
+            BulkWriteOptions options = new BulkWriteOptions().ordered(false);
+            try {
+                result = (session == null)
+                        ? getDocuments(cache).bulkWrite(models, options)
+                        : getDocuments(cache).bulkWrite(session, models, options);
+            } finally {
+                endCausalSession(cache, session);
+            }
+        } catch (MongoBulkWriteException ex) {
+            // Duplicate keys (version mismatches on new documents) and any other per-document errors
+            ex.getWriteErrors().forEach(e -> failed.add(e.getIndex()));
+            result = ex.getWriteResult();
+        } catch (MongoException ex) {
+            cache.getLoggerService().info(ex, "MongoDB error bulk saving " + models.size() + " Objects to MongoDB Layer");
+            result = null;
+        }
+
+        // A write that didn't error was applied, unless its filter matched nothing
+        //  (a version mismatch or a removed document on a $set update), which the bulk result can't attribute
+        // Without a result (i.e. a network error) any of the writes may have been applied
+        Set<Integer> confirmed = new HashSet<>();
+        int expected = models.size() - failed.size();
+        int succeeded = (result == null) ? -1 : (result.wasAcknowledged() ? result.getMatchedCount() + result.getUpserts().size() : expected);
+        if (succeeded >= expected) {
+            for (int i = 0; i < models.size(); i++) {
+                if (!failed.contains(i)) { confirmed.add(i); }
+            }
+        } else {
+            confirmed.addAll(confirmWrites(cache, ids, versions, failed));
+        }
+
+        for (int i = 0; i < pending.size(); i++) {
+            X sync = pending.get(i);
+            synchronized (sync) {
+                if (confirmed.contains(i)) {
+                    results.put(sync.getId(), TriState.TRUE);
+                    if (sync.getVersion() == versions.get(i) + 1) {
+                        setWritten(cache, sync, copies.get(i));
+                        cache.cacheIndexes(sync, true);
+                    }
+                } else if (sync.getVersion() == versions.get(i) + 1) {
+                    // Roll back the version increment, the individual save will retry it
+                    sync.setVersion(versions.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads back the versions of a partially applied batch to find which writes succeeded.
+     * A document at our new version is treated as saved, only the others are rolled back for the individual save
+     *  (rolling back a write that was applied would make the individual save mismatch against our own write).
+     * @return The indexes (into ids) of the confirmed writes, empty if the versions could not be read
+     */
+    private <K, X extends Sync<K>> @NotNull Set<Integer> confirmWrites(Cache<K, X> cache, List<BsonValue> ids, List<Long> versions, Set<Integer> failed) {
+        try {
+            Map<BsonValue, Long> dbVersions = new HashMap<>();
+            for (BsonDocument doc : getDocuments(cache).find(Filters.in(ID_FIELD, ids))
+                    .projection(Projections.include(ID_FIELD, "version"))) {
+                if (doc.isNumber("version")) {
+                    dbVersions.put(doc.get(ID_FIELD), doc.getNumber("version").longValue());
+                }
+            }
+
+            Set<Integer> confirmed = new HashSet<>();
+            for (int i = 0; i < ids.size(); i++) {
+                if (failed.contains(i)) { continue; }
+                @Nullable Long dbVer = dbVersions.get(ids.get(i));
+                if (dbVer != null && dbVer == versions.get(i) + 1) {
+                    confirmed.add(i);
+                }
+            }
+            return confirmed;
+        } catch (MongoException ex) {
+            cache.getLoggerService().info(ex, "MongoDB error confirming bulk save in MongoDB Layer");
+            return Set.of();
         }
     }
 
@@ -170,7 +447,11 @@ public class MongoStorage extends StorageService {
         Preconditions.checkNotNull(key);
         try {
             Bson query = Filters.eq(ID_FIELD, cache.keyToString(key));
-            return getJackson(cache).countDocuments(query) > 0;
+            try (@Nullable ClientSession session = startCausalSession(cache)) {
+                MongoCollection<BsonDocument> coll = getReadDocuments(cache, false);
+                return (session == null ? coll.find(query) : coll.find(session, query))
+                        .projection(Projections.include(ID_FIELD)).first() != null;
+            }
         } catch (MongoException ex) {
             cache.getLoggerService().info(ex, "MongoDB error check if Sync exists in MongoDB Layer: " + key);
             return false;
@@ -182,7 +463,7 @@ public class MongoStorage extends StorageService {
 
     @Override
     public <K, X extends Sync<K>> long size(Cache<K, X> cache) {
-        return getJackson(cache).countDocuments();
+        return getReadDocuments(cache, true).countDocuments();
     }
 
     @Override
@@ -190,7 +471,13 @@ public class MongoStorage extends StorageService {
         Preconditions.checkNotNull(key);
         try {
             Bson query = Filters.eq(ID_FIELD, cache.keyToString(key));
-            return getJackson(cache).deleteMany(query).getDeletedCount() > 0;
+            try (@Nullable ClientSession session = startCausalSession(cache)) {
+                try {
+                    return (session == null ? getJackson(cache).deleteMany(query) : getJackson(cache).deleteMany(session, query)).getDeletedCount() > 0;
+                } finally {
+                    endCausalSession(cache, session);
+                }
+            }
         } catch (MongoException ex) {
             cache.getLoggerService().info(ex, "MongoDB error removing Sync from MongoDB Layer: " + key);
         } catch (Exception expected) {
@@ -201,19 +488,84 @@ public class MongoStorage extends StorageService {
 
     @Override
     public <K, X extends Sync<K>> Iterable<X> getAll(Cache<K, X> cache) {
-        Iterator<X> iterator = getJackson(cache).find().iterator();
+        Iterator<BsonDocument> iterator = getReadDocuments(cache, true).find().iterator();
         // Make sure to cache indexes when a sync is loaded from the database
-        return () -> new TransformingIterator<>(iterator, x -> {
+        return () -> new TransformingIterator<>(iterator, doc -> {
+            X x = fromDocument(cache, doc);
             cache.cacheIndexes(x, true);
             return x;
         });
     }
 
+    @Override
+    public <K, X extends Sync<K>> @NotNull Stream<X> streamAll(Cache<K, X> cache, @NotNull Consumer<X> onLoad) {
+        int batchSize = getStreamBatchSize();
+        MongoCursor<BsonDocument> cursor = getReadDocuments(cache, true).find().batchSize(batchSize).cursor();
+        PipelinedSpliterator<BsonDocument, X> spliterator = new PipelinedSpliterator<>(cursor, doc -> {
+            try {
+                X sync = fromDocument(cache, doc);
+                // Make sure to cache indexes when a sync is loaded from the database
+                cache.cacheIndexes(sync, true);
+                onLoad.accept(sync);
+                return sync;
+            } catch (Exception ex) {
+                cache.getLoggerService().info(ex, "Error decoding Object from MongoDB Layer: " + doc.get(ID_FIELD));
+                return null;
+            }
+        }, batchSize, STREAM_MAX_IN_FLIGHT, cursor::close);
+        return StreamSupport.stream(spliterator, true).onClose(spliterator::close);
+    }
+
     @Override
     public <K, X extends Sync<K>> Iterable<K> getKeys(Cache<K, X> cache) {
         // Fetch all documents, but use Projection to only retrieve the ID field
-        Iterator<X> iterator = getJackson(cache).find().projection(Projections.include(ID_FIELD)).iterator();
-        return () -> new TransformingIterator<>(iterator, Sync::getId);
+        Iterator<BsonDocument> iterator = getReadDocuments(cache, true).find().projection(Projections.include(ID_FIELD)).iterator();
+        return () -> new TransformingIterator<>(iterator, doc -> fromDocument(cache, doc).getId());
+    }
+
+    @Override
+    public <K, X extends Sync<K>> @NotNull List<X> find(Cache<K, X> cache, @NotNull SyncQuery query) {
+        FindIterable<BsonDocument> iterable = getReadDocuments(cache, true).find(MongoQueries.toFilter(query));
+        @Nullable Bson sort = MongoQueries.toSort(query);
+        if (sort != null) { iterable = iterable.sort(sort); }
+        if (query.getSkip() > 0) { iterable = iterable.skip(query.getSkip()); }
+        if (query.getLimit() > 0) { iterable = iterable.limit(query.getLimit()); }
+
+        List<X> results = new ArrayList<>();
+        for (BsonDocument doc : iterable) {
+            X sync = fromDocument(cache, doc);
+            // Make sure to cache indexes when a sync is loaded from the database
+            cache.cacheIndexes(sync, true);
+            results.add(sync);
+        }
+        return results;
+    }
+
+    @Override
+    public <K, X extends Sync<K>> long count(Cache<K, X> cache, @NotNull SyncQuery query) {
+        CountOptions options = new CountOptions();
+        if (query.getSkip() > 0) { options.skip(query.getSkip()); }
+        if (query.getLimit() > 0) { options.limit(query.getLimit()); }
+        return getReadDocuments(cache, true).countDocuments(MongoQueries.toFilter(query), options);
+    }
+
+    @Override
+    public <K, X extends Sync<K>> @Nullable Double aggregate(Cache<K, X> cache, @NotNull SyncQuery query, @NotNull Aggregation aggregation, @Nullable String valueField) {
+        Preconditions.checkArgument(aggregation == Aggregation.COUNT || valueField != null, "valueField is required for " + aggregation);
+        @Nullable BsonDocument result = getReadDocuments(cache, true)
+                .aggregate(MongoQueries.toPipeline(query, null, aggregation, valueField))
+                .first();
+        return (result == null) ? null : MongoQueries.toDouble(result.get(MongoQueries.VALUE_FIELD));
+    }
+
+    @Override
+    public <K, X extends Sync<K>> @NotNull Map<Object, Double> groupBy(Cache<K, X> cache, @NotNull SyncQuery query, @NotNull String groupField, @NotNull Aggregation aggregation, @Nullable String valueField) {
+        Preconditions.checkArgument(aggregation == Aggregation.COUNT || valueField != null, "valueField is required for " + aggregation);
+        Map<Object, Double> results = new HashMap<>();
+        for (BsonDocument doc : getReadDocuments(cache, true).aggregate(MongoQueries.toPipeline(query, groupField, aggregation, valueField))) {
+            results.put(MongoQueries.toJava(doc.get(ID_FIELD)), MongoQueries.toDouble(doc.get(MongoQueries.VALUE_FIELD)));
+        }
+        return results;
     }
 
     @Override
@@ -303,6 +655,93 @@ public class MongoStorage extends StorageService {
         return coll;
     }
 
+    /**
+     * A view of the cache's collection that reads and writes raw BSON (used for conditional writes).
+     */
+    public <K, X extends Sync<K>> @NotNull MongoCollection<BsonDocument> getDocuments(Cache<K, X> cache) {
+        return getJackson(cache).withDocumentClass(BsonDocument.class);
+    }
+
+    /**
+     * @return The raw document collection with the cache's read preference applied (see {@link ReadOptions})
+     * @param bulk If this is for a bulk read (scans), rather than a point read
+     */
+    public <K, X extends Sync<K>> @NotNull MongoCollection<BsonDocument> getReadDocuments(Cache<K, X> cache, boolean bulk) {
+        ReadPreference pref = cache.getReadOptions().toReadPreference(bulk);
+        MongoCollection<BsonDocument> coll = getDocuments(cache);
+        return pref.equals(ReadPreference.primary()) ? coll : coll.withReadPreference(pref);
+    }
+
+    // ------------------------------------------------- //
+    //         Causal Sessions (Read Your Writes)        //
+    // ------------------------------------------------- //
+    private final Map<String, CausalClock> clocks = new ConcurrentHashMap<>();
+
+    /**
+     * @return A causally consistent session that includes this cache's latest writes, or null if the cache
+     *  does not use {@link ReadOptions#isReadYourWrites()}
+     */
+    private <K, X extends Sync<K>> @Nullable ClientSession startCausalSession(Cache<K, X> cache) {
+        if (!cache.getReadOptions().isReadYourWrites()) { return null; }
+        ClientSession session = mongoClient.startSession(ClientSessionOptions.builder().causallyConsistent(true).build());
+        getClock(cache).applyTo(session);
+        return session;
+    }
+
+    /**
+     * Records the session's operation time after a write, so later reads in this cache observe it.
+     * Closing the session is left to the caller.
+     */
+    private <K, X extends Sync<K>> void endCausalSession(Cache<K, X> cache, @Nullable ClientSession session) {
+        if (session == null) { return; }
+        getClock(cache).advance(session);
+    }
+
+    private <K, X extends Sync<K>> @NotNull CausalClock getClock(Cache<K, X> cache) {
+        return clocks.computeIfAbsent(cache.getDatabaseName() + "." + cache.getName(), k -> new CausalClock());
+    }
+
+    /**
+     * Encodes a Sync with the same Jackson codec that MongoJack uses, so the BSON matches what it would write.
+     */
+    public <K, X extends Sync<K>> @NotNull BsonDocument toDocument(Cache<K, X> cache, @NotNull X sync) {
+        Codec<X> codec = getJackson(cache).getCodecRegistry().get(cache.getSyncClass());
+        BsonDocument doc = new BsonDocument();
+        codec.encode(new BsonDocumentWriter(doc), sync, EncoderContext.builder().isEncodingCollectibleDocument(true).build());
+        return doc;
+    }
+
+    /**
+     * Decode a Sync from its raw BSON document, using the same codec as the Jackson collection.
+     */
+    public <K, X extends Sync<K>> @NotNull X fromDocument(Cache<K, X> cache, @NotNull BsonDocument doc) {
+        Codec<X> codec = getJackson(cache).getCodecRegistry().get(cache.getSyncClass());
+        return codec.decode(new BsonDocumentReader(doc), DecoderContext.builder().build());
+    }
+
+    /**
+     * Diff an encoded Sync against its cached copy (the last state loaded from or saved to the database).
+     * @return The diff, or null if there is no cached copy at the version we are saving from
+     */
+    @SuppressWarnings("unchecked")
+    private <K, X extends Sync<K>> @Nullable DocumentDiff diffCachedCopy(Cache<K, X> cache, @NotNull X sync, long localVer, @NotNull BsonDocument doc) {
+        if (!sync.hasCachedCopy()) { return null; }
+        X cachedCopy = (X) sync.getCachedCopy();
+        if (cachedCopy.getVersion() != localVer) { return null; }
+        return DocumentDiff.of(toDocument(cache, cachedCopy), doc);
+    }
+
+    /**
+     * @return The version of the document stored in the database, or null if it does not exist
+     */
+    private <K, X extends Sync<K>> @Nullable Long getDatabaseVersion(Cache<K, X> cache, @NotNull BsonValue id) {
+        @Nullable BsonDocument doc = getDocuments(cache).find(Filters.eq(ID_FIELD, id))
+                .projection(Projections.include(ID_FIELD, "version"))
+                .first();
+        if (doc == null || !doc.isNumber("version")) { return null; }
+        return doc.getNumber("version").longValue();
+    }
+
 
     // ------------------------------------------------- //
     //                   LoggerService                   //
@@ -362,10 +801,20 @@ public class MongoStorage extends StorageService {
 
     @Override
     public <K, X extends Sync<K>, T> void registerIndex(@NotNull SyncCache<K, X> cache, IndexedField<X, T> index) {
-        getJackson(cache).createIndex(
-                new Document(index.getName(), 1),
-                new IndexOptions().unique(true)
-        );
+        Document keys = new Document();
+        index.getFields().forEach(field -> keys.append(field, 1));
+
+        IndexOptions options = new IndexOptions().unique(index.isUnique()).sparse(index.isSparse());
+        @Nullable SyncQuery partialFilter = index.getPartialFilter();
+        if (partialFilter != null) {
+            options.partialFilterExpression(MongoQueries.toFilter(partialFilter));
+        }
+        try {
+            getJackson(cache).createIndex(keys, options);
+        } catch (MongoCommandException ex) {
+            // i.e. an index on these fields already exists with different options (must be dropped manually)
+            cache.getLoggerService().info(ex, "Failed to create index " + index.getName() + " in cache " + cache.getName());
+        }
     }
     @Override
     public <K, X extends Sync<K>> void cacheIndexes(@NotNull SyncCache<K, X> cache, @NotNull X sync, boolean updateFile) {
@@ -377,14 +826,33 @@ public class MongoStorage extends StorageService {
     }
     @Override
     public <K, X extends Sync<K>, T> @Nullable K getSyncIdByIndex(@NotNull SyncCache<K, X> cache, IndexedField<X, T> index, T value) {
-        // Fetch an object with the given index value, projecting only the ID and the index field
-        Bson query = Filters.eq(index.getName(), value);
-        @Nullable X sync = getJackson(cache).find(query).projection(Projections.include(ID_FIELD, index.getName())).first();
-        // Ensure index value equality
-        if (sync != null && !index.equals(index.getValue(sync), value)) {
-            return null;
+        try (Stream<K> ids = getSyncIdsByIndex(cache, index, value)) {
+            return ids.findFirst().orElse(null);
+        }
+    }
+
+    @Override
+    public <K, X extends Sync<K>, T> @NotNull Stream<K> getSyncIdsByIndex(@NotNull SyncCache<K, X> cache, IndexedField<X, T> index, T value) {
+        // Fetch objects with the given index value, projecting only the ID and the index fields
+        List<Bson> filters = new ArrayList<>();
+        index.toFieldValues(value).forEach((field, v) -> filters.add(Filters.eq(field, v)));
+        // Only match Syncs inside a partial index (like FileStorage), this also lets Mongo use that index
+        @Nullable SyncQuery partialFilter = index.getPartialFilter();
+        if (partialFilter != null) {
+            filters.add(MongoQueries.toFilter(partialFilter));
         }
-        return sync == null ? null : sync.getId();
+        Bson query = (filters.size() == 1) ? filters.get(0) : Filters.and(filters);
+
+        List<String> projection = new ArrayList<>(index.getFields());
+        projection.add(ID_FIELD);
+        MongoCursor<BsonDocument> cursor = getReadDocuments(cache, true).find(query).projection(Projections.include(projection)).cursor();
+        Spliterator<BsonDocument> spliterator = Spliterators.spliteratorUnknownSize(cursor, Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false)
+                .map(doc -> fromDocument(cache, doc))
+                // Ensure index value equality
+                .filter(sync -> index.equals(index.getValue(sync), value))
+                .map(sync -> sync.getId())
+                .onClose(cursor::close);
     }
 
     @Override
@@ -1,6 +1,7 @@
 package com.kamikazejam.syncengine.connections.storage;
 
 import com.kamikazejam.kamicommon.util.data.TriState;
+import com.kamikazejam.syncengine.EngineSource;
 import com.kamikazejam.syncengine.base.Cache;
 import com.kamikazejam.syncengine.base.Service;
 import com.kamikazejam.syncengine.base.Sync;
@@ -8,11 +9,17 @@ import com.kamikazejam.syncengine.base.SyncCache;
 import com.kamikazejam.syncengine.base.error.LoggerService;
 import com.kamikazejam.syncengine.base.exception.VersionMismatchException;
 import com.kamikazejam.syncengine.base.index.IndexedField;
+import com.kamikazejam.syncengine.base.query.Aggregation;
+import com.kamikazejam.syncengine.base.query.SyncQuery;
 import org.jetbrains.annotations.Blocking;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Defines the minimum set of methods all Storage services must implement.
@@ -23,6 +30,8 @@ public abstract class StorageService extends LoggerService implements Service {
     /**
      * Save a Sync to this store. Requires the cache it belongs to.
      * Implementations of this class should handle optimistic versioning and throw errors accordingly.
+     * After a write, implementations set the Sync's cached copy from the exact state written (see {@link #setWritten}),
+     *  never from the live Sync afterwards, which may already have newer unsaved changes.
      *
      * @throws VersionMismatchException if
      * @return if the Sync was saved successfully. (NOT_SET if we didn't have changes to save)
@@ -30,12 +39,59 @@ public abstract class StorageService extends LoggerService implements Service {
     @NotNull
     public abstract <K, X extends Sync<K>> TriState save(Cache<K, X> cache, X sync) throws VersionMismatchException;
 
+    /**
+     * Set the state we just wrote as the Sync's cached copy (the baseline for the next save) and saved copy.
+     * @param written A new Sync decoded from the written document, at the saved version
+     */
+    protected <K, X extends Sync<K>> void setWritten(@NotNull Cache<K, X> cache, @NotNull X sync, @NotNull X written) {
+        written.setCache(cache);
+        sync.setCachedCopy(written);
+        sync.setSavedCopy(written);
+    }
+
+    /**
+     * Save multiple Syncs to this store, writing up to batchSize Syncs per request where the store supports it.
+     * Syncs which could not be saved in bulk (i.e. version mismatches or write errors) are left out of the
+     * returned map, and should be saved individually with {@link #save(Cache, Sync)} to resolve them.
+     *
+     * @return The save result (see {@link #save(Cache, Sync)}) for every Sync that was handled in bulk.
+     */
+    @NotNull
+    public <K, X extends Sync<K>> Map<K, TriState> saveAll(Cache<K, X> cache, Collection<X> syncs, int batchSize) {
+        // Default implementation: no bulk support, save one at a time
+        Map<K, TriState> results = new HashMap<>();
+        for (X sync : syncs) {
+            try {
+                results.put(sync.getId(), this.save(cache, sync));
+            } catch (VersionMismatchException ignored) {
+                // Left out of the results, the caller resolves the mismatch
+            }
+        }
+        return results;
+    }
+
     /**
      * Retrieve a Sync from this store. Requires the cache to fetch it from.
      */
     @NotNull
     public abstract <K, X extends Sync<K>> Optional<X> get(Cache<K, X> cache, K key);
 
+    /**
+     * Retrieve a Sync from the authoritative copy of this store, ignoring the cache's {@link com.kamikazejam.syncengine.base.cache.ReadOptions}.
+     * Stores without replicas read the same way as {@link #get(Cache, Object)}.
+     */
+    @NotNull
+    public <K, X extends Sync<K>> Optional<X> getFromPrimary(Cache<K, X> cache, K key) {
+        return this.get(cache, key);
+    }
+
+    /**
+     * Retrieve multiple Syncs from this store. Requires the cache to fetch them from.
+     * @return The Syncs that were found, keyed by id (keys that don't exist are absent)
+     */
+    @NotNull
+    public abstract <K, X extends Sync<K>> Map<K, X> getMany(Cache<K, X> cache, Collection<K> keys);
+
     /**
      * @return How many Syncs are stored in a cache within this store.
      */
@@ -56,11 +112,28 @@ public abstract class StorageService extends LoggerService implements Service {
      */
     public abstract <K, X extends Sync<K>> Iterable<X> getAll(Cache<K, X> cache);
 
+    /**
+     * Stream all Syncs from a specific cache. Syncs are read in batches of {@link #getStreamBatchSize()}, and decoded
+     * on worker threads while the next batch is read. The Stream is parallel (call sequential() if needed),
+     * and must be closed if it is not fully consumed.
+     *
+     * @param onLoad Called for every Sync as it is decoded, on the worker thread.
+     */
+    @NotNull
+    public abstract <K, X extends Sync<K>> Stream<X> streamAll(Cache<K, X> cache, @NotNull Consumer<X> onLoad);
+
     /**
      * Retrieve all Sync keys from a specific cache.
      */
     public abstract <K, X extends Sync<K>> Iterable<K> getKeys(Cache<K, X> cache);
 
+    /**
+     * @return How many Syncs are read per batch in {@link #streamAll(Cache, Consumer)}
+     */
+    public static int getStreamBatchSize() {
+        return Math.max(1, EngineSource.getConfig().getInt("streamBatchSize", 1000));
+    }
+
     /**
      * @return If the StorageService is ready to be used for a cache.
      */
@@ -78,6 +151,109 @@ public abstract class StorageService extends LoggerService implements Service {
     @Blocking
     public abstract long getPingNano();
 
+    // ------------------------------------------------- //
+    //                       Async                       //
+    // ------------------------------------------------- //
+    // Dedicated, bounded pool for storage I/O, so async calls don't tie up the Bukkit async pool
+    private volatile @Nullable ExecutorService executor = null;
+
+    /**
+     * @return The executor that runs the async storage methods (sized by the 'storageThreads' config option)
+     */
+    public @NotNull ExecutorService getExecutor() {
+        @Nullable ExecutorService e = executor;
+        if (e != null) { return e; }
+        synchronized (this) {
+            if (executor == null) {
+                int threads = Math.max(1, EngineSource.getConfig().getInt("storageThreads", 16));
+                AtomicInteger count = new AtomicInteger();
+                executor = Executors.newFixedThreadPool(threads, r -> {
+                    Thread t = new Thread(r, "SyncEngine-Storage-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            return executor;
+        }
+    }
+
+    /**
+     * Stops the async executor, waiting briefly for pending operations. Called when the service shuts down.
+     */
+    protected void shutdownExecutor() {
+        @Nullable ExecutorService e = executor;
+        if (e == null) { return; }
+        executor = null;
+        e.shutdown();
+        try {
+            if (!e.awaitTermination(10, TimeUnit.SECONDS)) {
+                this.warn("Timed out waiting for async storage operations to finish.");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Async variant of {@link #get(Cache, Object)}
+     */
+    @NotNull
+    public <K, X extends Sync<K>> CompletableFuture<Optional<X>> getAsync(Cache<K, X> cache, K key) {
+        return CompletableFuture.supplyAsync(() -> this.get(cache, key), getExecutor());
+    }
+
+    /**
+     * Async variant of {@link #getMany(Cache, Collection)}
+     */
+    @NotNull
+    public <K, X extends Sync<K>> CompletableFuture<Map<K, X>> getManyAsync(Cache<K, X> cache, Collection<K> keys) {
+        return CompletableFuture.supplyAsync(() -> this.getMany(cache, keys), getExecutor());
+    }
+
+    /**
+     * Async variant of {@link #save(Cache, Sync)}
+     * A {@link VersionMismatchException} completes the future exceptionally.
+     */
+    @NotNull
+    public <K, X extends Sync<K>> CompletableFuture<TriState> saveAsync(Cache<K, X> cache, X sync) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return this.save(cache, sync);
+            } catch (VersionMismatchException ex) {
+                throw new CompletionException(ex);
+            }
+        }, getExecutor());
+    }
+
+    // ------------------------------------------------- //
+    //                      Queries                      //
+    // ------------------------------------------------- //
+    /**
+     * Retrieve the Syncs matching a query, in the order requested by the query.
+     */
+    @NotNull
+    public abstract <K, X extends Sync<K>> List<X> find(Cache<K, X> cache, @NotNull SyncQuery query);
+
+    /**
+     * @return How many Syncs match a query (respecting its skip and limit).
+     */
+    public abstract <K, X extends Sync<K>> long count(Cache<K, X> cache, @NotNull SyncQuery query);
+
+    /**
+     * Aggregate a numeric field over the Syncs matching a query.
+     * @param valueField The field to aggregate (ignored for {@link Aggregation#COUNT})
+     * @return The result, or null if no Syncs matched (or none had a numeric value for MIN, MAX and AVG)
+     */
+    @Nullable
+    public abstract <K, X extends Sync<K>> Double aggregate(Cache<K, X> cache, @NotNull SyncQuery query, @NotNull Aggregation aggregation, @Nullable String valueField);
+
+    /**
+     * Aggregate a numeric field over the Syncs matching a query, grouped by the value of groupField.
+     * @return The result of each group, keyed by the group value (null for Syncs without the field)
+     */
+    @NotNull
+    public abstract <K, X extends Sync<K>> Map<Object, Double> groupBy(Cache<K, X> cache, @NotNull SyncQuery query, @NotNull String groupField, @NotNull Aggregation aggregation, @Nullable String valueField);
+
     // ------------------------------------------------- //
     //                     Indexing                      //
     // ------------------------------------------------- //
@@ -85,6 +261,10 @@ public abstract class StorageService extends LoggerService implements Service {
     public abstract <K, X extends Sync<K>> void cacheIndexes(@NotNull SyncCache<K, X> cache, @NotNull X sync, boolean updateFile);
     public abstract <K, X extends Sync<K>> void saveIndexCache(@NotNull SyncCache<K, X> cache);
     public abstract <K, X extends Sync<K>, T> @Nullable K getSyncIdByIndex(@NotNull SyncCache<K, X> cache, IndexedField<X, T> index, T value);
+    /**
+     * @return The ids of every Sync with this index value (for non-unique indexes). The Stream must be closed.
+     */
+    public abstract <K, X extends Sync<K>, T> @NotNull Stream<K> getSyncIdsByIndex(@NotNull SyncCache<K, X> cache, IndexedField<X, T> index, T value);
     public abstract <K, X extends Sync<K>> void invalidateIndexes(@NotNull SyncCache<K, X> cache, @NotNull K syncId, boolean updateFile);
 
 }
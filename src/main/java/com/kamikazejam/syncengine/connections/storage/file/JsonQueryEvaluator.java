@@ -0,0 +1,171 @@
+package com.kamikazejam.syncengine.connections.storage.file;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.kamikazejam.syncengine.base.query.Aggregation;
+import com.kamikazejam.syncengine.base.query.SyncQuery;
+import com.kamikazejam.syncengine.util.JacksonUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Evaluates {@link SyncQuery} objects against the json of stored Syncs, for storage without native queries (FILE).
+ * Comparisons follow MongoDB where it is practical: missing fields sort first, numbers compare by value.
+ */
+public class JsonQueryEvaluator {
+
+    /**
+     * Applies the query conditions, sort, skip and limit to a stream of Sync json documents.
+     */
+    public static @NotNull Stream<JsonNode> apply(@NotNull Stream<JsonNode> docs, @NotNull SyncQuery query) {
+        List<Condition> conditions = query.getConditions().stream().map(Condition::new).toList();
+        Stream<JsonNode> stream = docs.filter(doc -> conditions.stream().allMatch(c -> c.matches(doc)));
+        if (!query.getSorts().isEmpty()) {
+            stream = stream.sorted(comparator(query));
+        }
+        if (query.getSkip() > 0) {
+            stream = stream.skip(query.getSkip());
+        }
+        if (query.getLimit() > 0) {
+            stream = stream.limit(query.getLimit());
+        }
+        return stream;
+    }
+
+    /**
+     * @return If the document matches all the query conditions (sort, skip and limit are ignored)
+     */
+    public static boolean matches(@NotNull JsonNode doc, @NotNull SyncQuery query) {
+        return query.getConditions().stream().map(Condition::new).allMatch(c -> c.matches(doc));
+    }
+
+    /**
+     * @return The aggregation over all documents, or null if there was no value (i.e. no matching documents)
+     */
+    public static @Nullable Double aggregate(@NotNull List<JsonNode> docs, @NotNull Aggregation aggregation, @Nullable String valueField) {
+        if (docs.isEmpty()) { return null; }
+        if (aggregation == Aggregation.COUNT) { return (double) docs.size(); }
+
+        DoubleSummaryStatistics stats = docs.stream()
+                .map(doc -> resolve(doc, Objects.requireNonNull(valueField, "valueField")))
+                .filter(node -> node != null && node.isNumber())
+                .mapToDouble(JsonNode::asDouble)
+                .summaryStatistics();
+        if (aggregation == Aggregation.SUM) { return stats.getSum(); }
+        if (stats.getCount() == 0) { return null; }
+        return switch (aggregation) {
+            case MIN -> stats.getMin();
+            case MAX -> stats.getMax();
+            default -> stats.getAverage();
+        };
+    }
+
+    /**
+     * Groups the documents by the value of groupField, and aggregates each group.
+     */
+    public static @NotNull Map<Object, Double> groupBy(@NotNull List<JsonNode> docs, @NotNull String groupField, @NotNull Aggregation aggregation, @Nullable String valueField) {
+        Map<Optional<Object>, List<JsonNode>> groups = docs.stream().collect(Collectors.groupingBy(doc -> Optional.ofNullable(toJava(resolve(doc, groupField)))));
+        Map<Object, Double> results = new HashMap<>();
+        groups.forEach((key, group) -> results.put(key.orElse(null), aggregate(group, aggregation, valueField)));
+        return results;
+    }
+
+    // ------------------------------------------------- //
+    //                      Helpers                      //
+    // ------------------------------------------------- //
+    private static @NotNull Comparator<JsonNode> comparator(@NotNull SyncQuery query) {
+        Comparator<JsonNode> comparator = null;
+        for (SyncQuery.Sort sort : query.getSorts()) {
+            Comparator<JsonNode> c = (a, b) -> compare(resolve(a, sort.getField()), resolve(b, sort.getField()));
+            if (!sort.isAscending()) { c = c.reversed(); }
+            comparator = (comparator == null) ? c : comparator.thenComparing(c);
+        }
+        return Objects.requireNonNull(comparator);
+    }
+
+    /**
+     * @return The node at the dotted path, or null if it is missing
+     */
+    public static @Nullable JsonNode resolve(@NotNull JsonNode doc, @NotNull String path) {
+        JsonNode node = doc;
+        for (String part : path.split("\\.")) {
+            node = node.get(part);
+            if (node == null) { return null; }
+        }
+        return node.isNull() ? null : node;
+    }
+
+    private static int compare(@Nullable JsonNode a, @Nullable JsonNode b) {
+        if (a == null || b == null) {
+            return (a == null) ? (b == null ? 0 : -1) : 1;
+        }
+        if (a.isNumber() && b.isNumber()) {
+            return a.decimalValue().compareTo(b.decimalValue());
+        }
+        if (a.isTextual() && b.isTextual()) {
+            return a.asText().compareTo(b.asText());
+        }
+        if (a.isBoolean() && b.isBoolean()) {
+            return Boolean.compare(a.asBoolean(), b.asBoolean());
+        }
+        return a.toString().compareTo(b.toString());
+    }
+
+    private static boolean valueEquals(@Nullable JsonNode a, @Nullable JsonNode b) {
+        if (a == null || b == null) { return a == b; }
+        if (a.isNumber() && b.isNumber()) {
+            return a.decimalValue().compareTo(b.decimalValue()) == 0;
+        }
+        return a.equals(b);
+    }
+
+    private static @Nullable Object toJava(@Nullable JsonNode node) {
+        if (node == null) { return null; }
+        try {
+            return JacksonUtil.getMapper().treeToValue(node, Object.class);
+        } catch (Exception e) {
+            return node.toString();
+        }
+    }
+
+    private static @Nullable JsonNode toNode(@Nullable Object value) {
+        return (value == null) ? null : JacksonUtil.getMapper().valueToTree(value);
+    }
+
+    /**
+     * A condition with its value pre-converted to json
+     */
+    private static class Condition {
+        private final @NotNull SyncQuery.Condition condition;
+        private final @Nullable JsonNode value;
+        private final @NotNull List<JsonNode> values;
+
+        private Condition(@NotNull SyncQuery.Condition condition) {
+            this.condition = condition;
+            if (condition.getOperator() == SyncQuery.Operator.IN) {
+                this.value = null;
+                this.values = ((Collection<?>) Objects.requireNonNull(condition.getValue())).stream().map(JsonQueryEvaluator::toNode).toList();
+            } else {
+                this.value = toNode(condition.getValue());
+                this.values = List.of();
+            }
+        }
+
+        private boolean matches(@NotNull JsonNode doc) {
+            @Nullable JsonNode field = resolve(doc, condition.getField());
+            return switch (condition.getOperator()) {
+                case EQ -> valueEquals(field, value);
+                case NE -> !valueEquals(field, value);
+                case GT -> field != null && compare(field, value) > 0;
+                case GTE -> field != null && compare(field, value) >= 0;
+                case LT -> field != null && compare(field, value) < 0;
+                case LTE -> field != null && compare(field, value) <= 0;
+                case IN -> values.stream().anyMatch(v -> valueEquals(field, v));
+                case EXISTS -> (field != null) == Boolean.TRUE.equals(condition.getValue());
+            };
+        }
+    }
+}
@@ -5,29 +5,26 @@ import com.kamikazejam.syncengine.base.SyncCache;
 import com.kamikazejam.syncengine.base.index.IndexedField;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class ThreadSafeFileIndexing {
     public interface MappingsConsumer {
-        void consume(@NotNull Map<String, Map<String, String>> mappings);
+        void consume(@NotNull Map<String, Map<String, Set<String>>> mappings);
     }
     public interface IndexesConsumer {
         void consume(@NotNull List<IndexedField<?, ?>> indexes);
     }
     public interface IndexesMappingsConsumer {
-        void consume(@NotNull Map<String, Map<String, String>> mappings, @NotNull List<IndexedField<?, ?>> indexes);
+        void consume(@NotNull Map<String, Map<String, Set<String>>> mappings, @NotNull List<IndexedField<?, ?>> indexes);
     }
 
     //  Map<CacheName,   List<IndexedField>  >
     private static final Map<String, List<IndexedField<?, ?>>> cacheIndexes = new HashMap<>();
     private static final ReentrantLock cacheIndexLock = new ReentrantLock();
 
-    //  Map<CacheName,   Map<FieldName,   Map<FieldValue, SyncKey>   >   >
-    private static final Map<String, Map<String, Map<String, String>>> indexMappings = new HashMap<>();
+    //  Map<CacheName,   Map<FieldName,   Map<FieldValue, Set<SyncKey>>   >   >  (one key per value for unique indexes)
+    private static final Map<String, Map<String, Map<String, Set<String>>>> indexMappings = new HashMap<>();
     private static final ReentrantLock mappingsLock = new ReentrantLock();
 
     public static <K, X extends Sync<K>> void consumeIndexes(@NotNull SyncCache<K, X> cache, @NotNull IndexesConsumer consumer) {
@@ -43,7 +40,7 @@ public class ThreadSafeFileIndexing {
     public static <K, X extends Sync<K>> void consumeMappings(@NotNull SyncCache<K, X> cache, @NotNull MappingsConsumer consumer) {
         mappingsLock.lock();
         try {
-            Map<String, Map<String, String>> mappings = indexMappings.computeIfAbsent(cache.getName(), k -> new HashMap<>());
+            Map<String, Map<String, Set<String>>> mappings = indexMappings.computeIfAbsent(cache.getName(), k -> new HashMap<>());
             consumer.consume(mappings);
         } finally {
             mappingsLock.unlock();
@@ -55,7 +52,7 @@ public class ThreadSafeFileIndexing {
         mappingsLock.lock();
         try {
             List<IndexedField<?, ?>> indexes = cacheIndexes.computeIfAbsent(cache.getName(), k -> new ArrayList<>());
-            Map<String, Map<String, String>> mappings = indexMappings.computeIfAbsent(cache.getName(), k -> new HashMap<>());
+            Map<String, Map<String, Set<String>>> mappings = indexMappings.computeIfAbsent(cache.getName(), k -> new HashMap<>());
             consumer.consume(mappings, indexes);
         }finally {
             // Reverse order
@@ -0,0 +1,226 @@
+package com.kamikazejam.syncengine.connections.storage.iterable;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A Spliterator that reads raw elements from a source on a producer thread, and decodes them in batches on worker
+ *  threads while the next batch is being read. At most maxInFlight batches are buffered (read or decoded, but not yet
+ *  consumed), which bounds the memory used by large scans.
+ * Like the {@link TransformingIterator}, the decoder may return null to skip an element.
+ * Splits hand out whole decoded batches (waiting for the next one if needed), so a parallel Stream processes
+ *  batches concurrently. Waits are managed blocks, so the ForkJoin pool can compensate for a blocked worker.
+ * The Spliterator must be closed if it is not fully consumed (i.e. use the Stream in a try-with-resources).
+ */
+public class PipelinedSpliterator<S, T> implements Spliterator<T>, AutoCloseable {
+    private static final Object END = new Object();
+
+    // Decoding runs on its own pool, never on the ForkJoin pool that runs the parallel Stream consuming the batches
+    private static final ExecutorService DECODER = createDecoder();
+
+    private final Iterator<S> source;
+    private final Function<S, @Nullable T> decoder;
+    private final int batchSize;
+    private final Runnable closeSource;
+
+    private final Semaphore permits;
+    private final BlockingQueue<Object> decoded = new LinkedBlockingQueue<>();
+    private final Thread producer;
+
+    private volatile boolean closed = false;
+    private volatile @Nullable Throwable error = null;
+    private volatile boolean ended = false;
+    private @NotNull Spliterator<T> current = Spliterators.emptySpliterator();
+
+    public PipelinedSpliterator(@NotNull Iterator<S> source, @NotNull Function<S, @Nullable T> decoder, int batchSize, int maxInFlight, @NotNull Runnable closeSource) {
+        this.source = source;
+        this.decoder = decoder;
+        this.batchSize = Math.max(1, batchSize);
+        this.closeSource = closeSource;
+        this.permits = new Semaphore(Math.max(1, maxInFlight));
+
+        this.producer = new Thread(this::produce, "SyncEngine-Pipeline-" + Integer.toHexString(System.identityHashCode(this)));
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+
+    private static @NotNull ExecutorService createDecoder() {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+            Thread t = new Thread(r, "SyncEngine-Pipeline-Decoder-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Reads raw batches from the source, and submits each one to be decoded
+    private void produce() {
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        try {
+            while (!closed && source.hasNext()) {
+                List<S> raw = new ArrayList<>(batchSize);
+                while (raw.size() < batchSize && source.hasNext()) {
+                    raw.add(source.next());
+                }
+                // Released once the decoded batch has been consumed
+                permits.acquire();
+                tasks.add(CompletableFuture.runAsync(() -> decoded.add(decode(raw)), DECODER));
+            }
+        } catch (InterruptedException ignored) {
+            // Closed while waiting for a permit
+        } catch (Throwable t) {
+            error = t;
+        } finally {
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).whenComplete((v, t) -> {
+                if (t != null && error == null) { error = t; }
+                decoded.add(END);
+            });
+        }
+    }
+
+    private @NotNull List<T> decode(@NotNull List<S> raw) {
+        List<T> batch = new ArrayList<>(raw.size());
+        for (S s : raw) {
+            @Nullable T t = decoder.apply(s);
+            if (t != null) {
+                batch.add(t);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Waits for the next batch to be decoded
+     * @return The next decoded batch, or null if there are no more batches
+     */
+    private @Nullable Spliterator<T> nextBatch() {
+        if (ended) { return null; }
+        try {
+            Object next = take();
+            if (next == END) {
+                ended = true;
+                @Nullable Throwable t = error;
+                if (t != null && !closed) {
+                    throw new CompletionException("Failed to read from source", t);
+                }
+                return null;
+            }
+            @SuppressWarnings("unchecked")
+            List<T> batch = (List<T>) next;
+            return new Batch(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ended = true;
+            return null;
+        }
+    }
+
+    // Waits for the next decoded batch (or END) as a managed block, so a waiting ForkJoin worker doesn't starve the pool
+    private @NotNull Object take() throws InterruptedException {
+        Object[] next = new Object[1];
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            @Override
+            public boolean block() throws InterruptedException {
+                if (next[0] == null) { next[0] = decoded.take(); }
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                return next[0] != null || (next[0] = decoded.poll()) != null;
+            }
+        });
+        return next[0];
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        while (!current.tryAdvance(action)) {
+            @Nullable Spliterator<T> batch = nextBatch();
+            if (batch == null) { return false; }
+            current = batch;
+        }
+        return true;
+    }
+
+    @Override
+    public @Nullable Spliterator<T> trySplit() {
+        // Hand out the next whole decoded batch (null once the source is exhausted)
+        return nextBatch();
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return NONNULL;
+    }
+
+    @Override
+    public void close() {
+        if (closed) { return; }
+        closed = true;
+        producer.interrupt();
+        closeSource.run();
+    }
+
+    /**
+     * A decoded batch, which returns its permit to the producer once it has been fully consumed
+     */
+    private class Batch implements Spliterator<T> {
+        private final Spliterator<T> elements;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Batch(@NotNull List<T> batch) {
+            this.elements = Spliterators.spliterator(batch, NONNULL);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (elements.tryAdvance(action)) { return true; }
+            release();
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            try {
+                elements.forEachRemaining(action);
+            } finally {
+                release();
+            }
+        }
+
+        @Override
+        public @Nullable Spliterator<T> trySplit() {
+            // Keep the batch whole, so it has a single point of release
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return elements.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return elements.characteristics();
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+}
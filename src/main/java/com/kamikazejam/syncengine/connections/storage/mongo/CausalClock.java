@@ -0,0 +1,47 @@
+package com.kamikazejam.syncengine.connections.storage.mongo;
+
+import com.mongodb.client.ClientSession;
+import org.bson.BsonDocument;
+import org.bson.BsonTimestamp;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Tracks the latest operation and cluster time of a cache's writes on this server.
+ * Advancing a causally consistent session with these times makes reads in that session observe those writes,
+ * even when they are served by a secondary.
+ */
+public class CausalClock {
+    private @Nullable BsonTimestamp operationTime = null;
+    private @Nullable BsonDocument clusterTime = null;
+
+    /**
+     * Record the times of a session that has just performed a write.
+     */
+    public synchronized void advance(@NotNull ClientSession session) {
+        @Nullable BsonTimestamp opTime = session.getOperationTime();
+        if (opTime != null && (operationTime == null || opTime.compareTo(operationTime) > 0)) {
+            operationTime = opTime;
+        }
+        @Nullable BsonDocument cluster = session.getClusterTime();
+        if (cluster != null && (clusterTime == null || getTimestamp(cluster).compareTo(getTimestamp(clusterTime)) > 0)) {
+            clusterTime = cluster;
+        }
+    }
+
+    /**
+     * Advance a session so that its reads include every write recorded here.
+     */
+    public synchronized void applyTo(@NotNull ClientSession session) {
+        if (clusterTime != null) {
+            session.advanceClusterTime(clusterTime);
+        }
+        if (operationTime != null) {
+            session.advanceOperationTime(operationTime);
+        }
+    }
+
+    private static @NotNull BsonTimestamp getTimestamp(@NotNull BsonDocument clusterTime) {
+        return clusterTime.getTimestamp("clusterTime", new BsonTimestamp());
+    }
+}
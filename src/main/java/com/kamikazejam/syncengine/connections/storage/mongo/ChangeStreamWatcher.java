@@ -0,0 +1,238 @@
+package com.kamikazejam.syncengine.connections.storage.mongo;
+
+import com.google.common.base.Preconditions;
+import com.kamikazejam.syncengine.EngineSource;
+import com.kamikazejam.syncengine.base.Cache;
+import com.kamikazejam.syncengine.base.Service;
+import com.kamikazejam.syncengine.base.Sync;
+import com.kamikazejam.syncengine.connections.storage.MongoStorage;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.MongoInterruptedException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static com.kamikazejam.syncengine.util.JacksonUtil.ID_FIELD;
+
+/**
+ * Watches a cache's MongoDB collection with a change stream, and applies every change to the cached Syncs.
+ * When enabled, this replaces the Redis updates pushed by the SyncUpdater after each save.
+ * Requires MongoDB to run as a replica set (change streams are not available on standalone servers).
+ */
+@SuppressWarnings("unused")
+public class ChangeStreamWatcher<K, X extends Sync<K>> implements Service {
+    // Error codes where the resume token can no longer be used (ChangeStreamFatalError, ChangeStreamHistoryLost)
+    private static final Set<Integer> TOKEN_LOST_CODES = Set.of(280, 286);
+    private static final long RECONNECT_DELAY_MS = 5_000L;
+
+    private final Cache<K, X> cache;
+    private final MongoStorage storage;
+    private volatile boolean running = false;
+    private @Nullable Thread thread = null;
+    // The resume token of the last processed event, we resume from here after a reconnect
+    private volatile @Nullable BsonDocument resumeToken = null;
+    // Set when the resume token was lost, the cached Syncs are reloaded once the new stream is open
+    private boolean reloadPending = false;
+
+    public ChangeStreamWatcher(@NotNull Cache<K, X> cache, @NotNull MongoStorage storage) {
+        this.cache = cache;
+        this.storage = storage;
+    }
+
+    /**
+     * @return If change streams are enabled in the config, and the storage service is MongoDB
+     */
+    public static boolean isEnabled() {
+        return EngineSource.getStorageService() instanceof MongoStorage
+                && EngineSource.getConfig().getBoolean("connections.MONGODB.changeStreams", false);
+    }
+
+    // ----------------------------------------------------- //
+    //                        Service                        //
+    // ----------------------------------------------------- //
+    @Override
+    public boolean start() {
+        Preconditions.checkState(!running, "ChangeStreamWatcher is already running for cache: " + cache.getName());
+        running = true;
+        thread = new Thread(this::watchLoop, "SyncEngine-ChangeStream-" + cache.getName());
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    @Override
+    public boolean shutdown() {
+        Preconditions.checkState(running, "ChangeStreamWatcher is not running for cache: " + cache.getName());
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // ----------------------------------------------------- //
+    //                     Change Stream                     //
+    // ----------------------------------------------------- //
+    private void watchLoop() {
+        while (running) {
+            try (MongoChangeStreamCursor<ChangeStreamDocument<BsonDocument>> cursor = openStream().cursor()) {
+                cache.getLoggerService().debug("Opened change stream for cache: " + cache.getName() + (resumeToken != null ? " (resumed)" : ""));
+                if (reloadPending) {
+                    // The stream is open, so every change after this reload reaches us through it
+                    reloadCached();
+                    reloadPending = false;
+                }
+                while (running) {
+                    // tryNext returns null after maxAwaitTime, so we can notice a shutdown
+                    @Nullable ChangeStreamDocument<BsonDocument> event = cursor.tryNext();
+                    if (event != null) {
+                        try {
+                            handleEvent(event);
+                        } catch (Exception ex) {
+                            // Skip this event rather than replaying it forever
+                            cache.getLoggerService().info(ex, "Error handling change stream event for cache: " + cache.getName());
+                        }
+                    }
+                    @Nullable BsonDocument token = cursor.getResumeToken();
+                    if (token != null) {
+                        resumeToken = token;
+                    }
+                }
+            } catch (MongoInterruptedException ignored) {
+                // Interrupted by shutdown
+            } catch (MongoCommandException ex) {
+                if (TOKEN_LOST_CODES.contains(ex.getErrorCode())) {
+                    // We can't resume, start a fresh stream and then reload the cached Syncs to cover the gap
+                    cache.getLoggerService().info("Change stream resume token lost for cache: " + cache.getName() + ", reloading cached Syncs");
+                    resumeToken = null;
+                    reloadPending = true;
+                } else {
+                    cache.getLoggerService().info(ex, "Change stream error for cache: " + cache.getName());
+                    sleepBeforeReconnect();
+                }
+            } catch (MongoException ex) {
+                // Connection issues, the driver can't resume by itself -> reopen from our token
+                if (running) {
+                    cache.getLoggerService().info(ex, "Change stream error for cache: " + cache.getName());
+                    sleepBeforeReconnect();
+                }
+            } catch (Exception ex) {
+                cache.getLoggerService().info(ex, "Unexpected change stream error for cache: " + cache.getName());
+                sleepBeforeReconnect();
+            }
+        }
+    }
+
+    private @NotNull ChangeStreamIterable<BsonDocument> openStream() {
+        ChangeStreamIterable<BsonDocument> stream = storage.getDocuments(cache)
+                .watch(List.of(Aggregates.match(Filters.in("operationType",
+                        OperationType.INSERT.getValue(),
+                        OperationType.REPLACE.getValue(),
+                        OperationType.UPDATE.getValue(),
+                        OperationType.DELETE.getValue()
+                ))))
+                .fullDocument(FullDocument.UPDATE_LOOKUP)
+                .maxAwaitTime(1, TimeUnit.SECONDS);
+        @Nullable BsonDocument token = resumeToken;
+        return (token != null) ? stream.resumeAfter(token) : stream;
+    }
+
+    private void handleEvent(@NotNull ChangeStreamDocument<BsonDocument> event) {
+        @Nullable BsonDocument documentKey = event.getDocumentKey();
+        if (documentKey == null || !documentKey.containsKey(ID_FIELD)) { return; }
+        @Nullable K key = keyFromId(documentKey.get(ID_FIELD));
+        if (key == null) { return; }
+
+        if (event.getOperationType() == OperationType.DELETE) {
+            // Another instance has deleted this Sync, invalidate any local copy
+            cache.getFromCache(key).ifPresent(sync -> {
+                cache.getLoggerService().debug("Change stream delete for " + cache.getName() + ":" + cache.keyToString(key));
+                sync.invalidate();
+                cache.getLocalStore().remove(key);
+            });
+            return;
+        }
+
+        @Nullable BsonDocument fullDocument = event.getFullDocument();
+        if (fullDocument != null) {
+            applyDocument(key, fullDocument);
+        }
+    }
+
+    /**
+     * Apply a newer database document to the cached Sync (only Syncs already in the cache are updated)
+     */
+    private void applyDocument(@NotNull K key, @NotNull BsonDocument doc) {
+        Optional<X> local = cache.getFromCache(key);
+        if (local.isEmpty()) { return; }
+
+        X sync = local.get();
+        X dbSync = storage.fromDocument(cache, doc);
+        applyNewer(sync, dbSync);
+    }
+
+    private void applyNewer(@NotNull X sync, @NotNull X dbSync) {
+        // Lock the Sync like the save path does, so we never apply a state in the middle of a local save
+        synchronized (sync) {
+            // Our own saves (and stale lookups) are at or below our version, nothing to apply
+            if (dbSync.getVersion() <= sync.getVersion()) { return; }
+
+            dbSync.setCache(cache);
+            cache.updateSyncFromNewer(sync, dbSync);
+            // The cached Sync now matches the database, keep the copy for VersionMismatchException handling
+            sync.cacheCopy();
+            cache.cacheIndexes(sync, true);
+        }
+        cache.getLoggerService().debug("Change stream update for " + cache.getName() + ":" + cache.keyToString(sync.getId()) + " version: " + sync.getVersion());
+    }
+
+    /**
+     * Reload every cached Sync from the database, used when we missed events and can't resume
+     */
+    private void reloadCached() {
+        List<K> keys = new ArrayList<>();
+        cache.getCached().forEach(sync -> keys.add(sync.getId()));
+        if (keys.isEmpty()) { return; }
+
+        cache.getDatabaseStore().getMany(keys).forEach((key, dbSync) ->
+                cache.getFromCache(key).ifPresent(sync -> applyNewer(sync, dbSync)));
+    }
+
+    private @Nullable K keyFromId(@NotNull BsonValue id) {
+        try {
+            if (id.isString()) {
+                return cache.keyFromString(id.asString().getValue());
+            }
+            if (id.isBinary()) {
+                return cache.keyFromString(id.asBinary().asUuid().toString());
+            }
+        } catch (Exception ignored) {}
+        return null;
+    }
+
+    private void sleepBeforeReconnect() {
+        try {
+            Thread.sleep(RECONNECT_DELAY_MS);
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.kamikazejam.syncengine.connections.storage.mongo;
+
+import lombok.Getter;
+import org.bson.BsonDocument;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+
+import static com.kamikazejam.syncengine.util.JacksonUtil.ID_FIELD;
+
+/**
+ * A field-level difference between two encoded Syncs, expressed as MongoDB $set and $unset operators.
+ * Nested documents are compared recursively and written with dotted paths, arrays and other values are
+ * replaced as a whole. The _id and version fields are never part of the diff, the version is set separately.
+ */
+@Getter
+@SuppressWarnings("unused")
+public class DocumentDiff {
+    public static final @NotNull String VERSION_FIELD = "version";
+
+    private final BsonDocument set = new BsonDocument();
+    private final BsonDocument unset = new BsonDocument();
+
+    private DocumentDiff() {}
+
+    /**
+     * Compute the changes required to turn the baseline document into the current document.
+     */
+    public static @NotNull DocumentDiff of(@NotNull BsonDocument baseline, @NotNull BsonDocument current) {
+        DocumentDiff diff = new DocumentDiff();
+        diff.compare("", baseline, current);
+        return diff;
+    }
+
+    /**
+     * @return True iff the documents had no differences (ignoring _id and version)
+     */
+    public boolean isEmpty() {
+        return set.isEmpty() && unset.isEmpty();
+    }
+
+    /**
+     * @return The update document for this diff, which also sets the version to the provided value
+     */
+    public @NotNull BsonDocument toUpdate(long newVersion) {
+        BsonDocument setWithVersion = set.clone();
+        setWithVersion.put(VERSION_FIELD, new BsonInt64(newVersion));
+
+        BsonDocument update = new BsonDocument("$set", setWithVersion);
+        if (!unset.isEmpty()) {
+            update.put("$unset", unset);
+        }
+        return update;
+    }
+
+    private void compare(@NotNull String prefix, @NotNull BsonDocument before, @NotNull BsonDocument after) {
+        for (Map.Entry<String, BsonValue> entry : after.entrySet()) {
+            String key = entry.getKey();
+            if (prefix.isEmpty() && (key.equals(ID_FIELD) || key.equals(VERSION_FIELD))) { continue; }
+
+            String path = prefix + key;
+            BsonValue value = entry.getValue();
+            BsonValue old = before.get(key);
+            if (old == null) {
+                set.put(path, value);
+            } else if (old.isDocument() && value.isDocument() && isPathSafe(old.asDocument()) && isPathSafe(value.asDocument())) {
+                // Recurse into sub-documents, so only the changed leaves are written
+                compare(path + ".", old.asDocument(), value.asDocument());
+            } else if (!old.equals(value)) {
+                set.put(path, value);
+            }
+        }
+
+        for (String key : before.keySet()) {
+            if (prefix.isEmpty() && (key.equals(ID_FIELD) || key.equals(VERSION_FIELD))) { continue; }
+            if (!after.containsKey(key)) {
+                unset.put(prefix + key, new BsonString(""));
+            }
+        }
+    }
+
+    /**
+     * Map keys can contain characters that are not allowed in a dotted update path.
+     * Documents with such keys are replaced as a whole instead of being diffed.
+     */
+    private static boolean isPathSafe(@NotNull BsonDocument doc) {
+        for (String key : doc.keySet()) {
+            if (key.isEmpty() || key.contains(".") || key.startsWith("$")) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
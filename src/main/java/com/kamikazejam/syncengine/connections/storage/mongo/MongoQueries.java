@@ -0,0 +1,109 @@
+package com.kamikazejam.syncengine.connections.storage.mongo;
+
+import com.kamikazejam.syncengine.base.query.Aggregation;
+import com.kamikazejam.syncengine.base.query.SyncQuery;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.BsonField;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.conversions.Bson;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Translates {@link SyncQuery} objects into native MongoDB filters and aggregation pipelines.
+ */
+public class MongoQueries {
+    public static final @NotNull String VALUE_FIELD = "value";
+
+    public static @NotNull Bson toFilter(@NotNull SyncQuery query) {
+        if (query.getConditions().isEmpty()) {
+            return new BsonDocument();
+        }
+        List<Bson> filters = new ArrayList<>();
+        for (SyncQuery.Condition c : query.getConditions()) {
+            filters.add(toFilter(c));
+        }
+        return filters.size() == 1 ? filters.get(0) : Filters.and(filters);
+    }
+
+    private static @NotNull Bson toFilter(@NotNull SyncQuery.Condition c) {
+        String field = c.getField();
+        Object value = c.getValue();
+        return switch (c.getOperator()) {
+            case EQ -> Filters.eq(field, value);
+            case NE -> Filters.ne(field, value);
+            case GT -> Filters.gt(field, value);
+            case GTE -> Filters.gte(field, value);
+            case LT -> Filters.lt(field, value);
+            case LTE -> Filters.lte(field, value);
+            case IN -> Filters.in(field, (Collection<?>) value);
+            case EXISTS -> Filters.exists(field, Boolean.TRUE.equals(value));
+        };
+    }
+
+    public static @Nullable Bson toSort(@NotNull SyncQuery query) {
+        if (query.getSorts().isEmpty()) { return null; }
+        List<Bson> sorts = new ArrayList<>();
+        for (SyncQuery.Sort s : query.getSorts()) {
+            sorts.add(s.isAscending() ? Sorts.ascending(s.getField()) : Sorts.descending(s.getField()));
+        }
+        return Sorts.orderBy(sorts);
+    }
+
+    /**
+     * Builds the pipeline: $match, then $sort/$skip/$limit if the query has them, then a $group on groupField
+     *  (or on everything, if groupField is null) which computes the aggregation into {@link #VALUE_FIELD}.
+     */
+    public static @NotNull List<Bson> toPipeline(@NotNull SyncQuery query, @Nullable String groupField, @NotNull Aggregation aggregation, @Nullable String valueField) {
+        List<Bson> pipeline = new ArrayList<>();
+        pipeline.add(Aggregates.match(toFilter(query)));
+        @Nullable Bson sort = toSort(query);
+        if (sort != null) { pipeline.add(Aggregates.sort(sort)); }
+        if (query.getSkip() > 0) { pipeline.add(Aggregates.skip(query.getSkip())); }
+        if (query.getLimit() > 0) { pipeline.add(Aggregates.limit(query.getLimit())); }
+
+        String fieldRef = "$" + valueField;
+        BsonField accumulator = switch (aggregation) {
+            case COUNT -> Accumulators.sum(VALUE_FIELD, 1);
+            case SUM -> Accumulators.sum(VALUE_FIELD, fieldRef);
+            case MIN -> Accumulators.min(VALUE_FIELD, fieldRef);
+            case MAX -> Accumulators.max(VALUE_FIELD, fieldRef);
+            case AVG -> Accumulators.avg(VALUE_FIELD, fieldRef);
+        };
+        pipeline.add(Aggregates.group(groupField == null ? null : "$" + groupField, accumulator));
+        return pipeline;
+    }
+
+    /**
+     * Converts a (group key) BsonValue into a plain Java value
+     */
+    public static @Nullable Object toJava(@Nullable BsonValue value) {
+        if (value == null || value.isNull()) { return null; }
+        return switch (value.getBsonType()) {
+            case STRING -> value.asString().getValue();
+            case INT32 -> value.asInt32().getValue();
+            case INT64 -> value.asInt64().getValue();
+            case DOUBLE -> value.asDouble().getValue();
+            case DECIMAL128 -> value.asDecimal128().getValue().bigDecimalValue();
+            case BOOLEAN -> value.asBoolean().getValue();
+            case BINARY -> value.asBinary().getType() == 4 ? value.asBinary().asUuid() : value.asBinary().getData();
+            default -> value.toString();
+        };
+    }
+
+    /**
+     * @return The numeric aggregation result, or null if there was no value (i.e. no matching Syncs)
+     */
+    public static @Nullable Double toDouble(@Nullable BsonValue value) {
+        if (value == null || !value.isNumber()) { return null; }
+        return value.asNumber().doubleValue();
+    }
+}
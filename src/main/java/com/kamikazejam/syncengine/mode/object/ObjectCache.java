@@ -4,10 +4,13 @@ import com.kamikazejam.syncengine.base.Cache;
 import com.kamikazejam.syncengine.base.cache.CacheSaveResult;
 import com.kamikazejam.syncengine.base.index.IndexedField;
 import org.jetbrains.annotations.Blocking;
+import org.jetbrains.annotations.NonBlocking;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 /**
  * Defines Object-specific getters for SyncObjects. They return non-null Optionals.
@@ -34,6 +37,14 @@ public interface ObjectCache<X extends SyncObject> extends Cache<String, X> {
     @NotNull
     X getOrCreate(@NotNull String key);
 
+    /**
+     * Async variant of {@link #get(String, boolean)}. Cached Syncs complete immediately, otherwise the Sync
+     * is loaded on the StorageService executor (the calling thread is never blocked).
+     */
+    @NonBlocking
+    @NotNull
+    CompletableFuture<Optional<X>> getAsync(@Nullable String key, boolean saveToLocalCache);
+
     /**
      * Retrieves ALL Syncs, including cached values and additional values from database.
      * @param cacheSyncs If true, any additional Sync fetched from db will be cached.
@@ -53,6 +64,16 @@ public interface ObjectCache<X extends SyncObject> extends Cache<String, X> {
     @NotNull
     Iterable<X> getAllFromDatabase(boolean cacheSyncs);
 
+    /**
+     * Streams all Syncs directly from db, bypassing the cache. Documents are read in batches and decoded on
+     * worker threads, and the Stream is parallel. Close the Stream (try-with-resources) if you don't consume all of it.
+     * @param cacheSyncs If true, syncs loaded from the database will be cached.
+     * @return A parallel Stream of all Syncs.
+     */
+    @Blocking
+    @NotNull
+    Stream<X> streamAllFromDatabase(boolean cacheSyncs);
+
     /**
      * Saves all Sync objects in this cache to the database.
      * Blocks until completion
@@ -35,6 +35,7 @@ public abstract class SyncObject implements Sync<String> {
     protected transient SyncObjectCache cache;
     protected transient @Nullable Long readOnlyTimeStamp = null;
     protected transient @Nullable Sync<String> cachedCopy;
+    protected transient @Nullable Sync<String> savedCopy;
     @Getter(AccessLevel.NONE)
     protected transient boolean validObject = true;
 
@@ -124,6 +125,21 @@ public abstract class SyncObject implements Sync<String> {
         return cachedCopy;
     }
 
+    @Override
+    public boolean hasCachedCopy() {
+        return cachedCopy != null;
+    }
+
+    @Override
+    public void setSavedCopy(@Nullable Sync<String> savedCopy) {
+        this.savedCopy = savedCopy;
+    }
+
+    @Override
+    public @Nullable Sync<String> getSavedCopy() {
+        return savedCopy;
+    }
+
     @Override
     public void setVersion(long version) {
         this.version = version;
@@ -21,9 +21,10 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 @Getter
 @SuppressWarnings("unused")
@@ -136,6 +137,35 @@ public abstract class SyncObjectCache<X extends SyncObject> extends SyncCache<St
         return loader(key).fetch(saveToLocalCache);
     }
 
+    @Override
+    public @NotNull CompletableFuture<Optional<X>> getAsync(@Nullable String key, boolean saveToLocalCache) {
+        if (key == null) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        // Same local handling as the SyncObjectLoader, valid cached Syncs don't need a thread hop
+        Optional<X> local = localStore.get(key);
+        if (local.isPresent()) {
+            if (local.get().isValid()) {
+                local.get().setCache(this);
+                return CompletableFuture.completedFuture(local);
+            }
+            localStore.remove(key);
+        }
+
+        return databaseStore.getAsync(key).thenApply(o -> {
+            if (o.isEmpty()) { return o; }
+            X sync = o.get();
+            if (!saveToLocalCache) {
+                sync.setCache(this);
+                return o;
+            }
+            // If another thread cached this Sync meanwhile, cache() merges into that instance
+            this.cache(sync);
+            return Optional.of(localStore.get(key).orElse(sync));
+        });
+    }
+
     @NotNull
     @Override
     public X getOrCreate(@NotNull String key) {
@@ -203,20 +233,24 @@ public abstract class SyncObjectCache<X extends SyncObject> extends SyncCache<St
     }
 
     @Override
-    public @NotNull CacheSaveResult saveAll() {
-        AtomicInteger total = new AtomicInteger();
-        AtomicInteger failures = new AtomicInteger();
-        for (X object : localStore.getAll()) {
-            if (object.isReadOnly()) {
-                continue;
+    public @NotNull Stream<X> streamAllFromDatabase(boolean cacheSyncs) {
+        return databaseStore.streamAll().map(dbSync -> {
+            // Same handling as getAllFromDatabase, local syncs are updated if we are caching
+            Optional<X> local = localStore.get(dbSync.getId());
+            if (cacheSyncs && local.isPresent() && dbSync.getVersion() >= local.get().getVersion()) {
+                SyncObjectCache.this.updateSyncFromNewer(local.get(), dbSync);
+                SyncObjectCache.this.cache(dbSync);
             }
 
-            total.getAndIncrement();
-            if (!saveSynchronously(object)) {
-                failures.getAndIncrement();
-            }
-        }
-        return new CacheSaveResult(total.get(), failures.get());
+            @NotNull X ret = local.orElse(dbSync);
+            ret.setCache(SyncObjectCache.this);
+            return ret;
+        });
+    }
+
+    @Override
+    public @NotNull CacheSaveResult saveAll() {
+        return this.saveAllSynchronously(localStore.getLocalCache().values());
     }
 
     @NotNull
@@ -47,11 +47,13 @@ public abstract class SyncProfile implements Sync<UUID> {
     protected transient String loadingSource = null;
     protected transient @Nullable Player player = null;
     protected transient long handshakeStartTimestamp = 0; // the time when a handshake starts (when another server requests that we save this profile)
+    protected transient long stagedTimestamp = 0; // the time when this profile was staged for a verified swap (cleared by the login handshake)
 
     // The version of the object when it was loaded (FROM A HANDSHAKE), null otherwise (if not loaded from handshake)
     protected transient @Nullable Long handshakeVersion = null;
     protected transient @Nullable Long readOnlyTimeStamp = null; // when read-only was set (for a swap handshake)
     protected transient @Nullable Sync<UUID> cachedCopy;
+    protected transient @Nullable Sync<UUID> savedCopy;
     protected transient boolean validObject = true;
 
 
@@ -150,6 +152,21 @@ public abstract class SyncProfile implements Sync<UUID> {
         return cachedCopy;
     }
 
+    @Override
+    public boolean hasCachedCopy() {
+        return cachedCopy != null;
+    }
+
+    @Override
+    public void setSavedCopy(@Nullable Sync<UUID> savedCopy) {
+        this.savedCopy = savedCopy;
+    }
+
+    @Override
+    public @Nullable Sync<UUID> getSavedCopy() {
+        return savedCopy;
+    }
+
     @Override
     public void setVersion(long version) {
         this.version = version;
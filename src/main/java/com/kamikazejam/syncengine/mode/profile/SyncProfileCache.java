@@ -29,7 +29,9 @@ import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
@@ -37,7 +39,6 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 @Getter
@@ -97,16 +98,13 @@ public abstract class SyncProfileCache<X extends SyncProfile> extends SyncCache<
     protected boolean terminate() {
         // Saving all Profiles makes sense since they should be backed by this instance
         boolean success = true;
-        AtomicInteger failedSaves = new AtomicInteger(0);
+        List<X> online = new ArrayList<>();
         for (Player player : plugin.getServer().getOnlinePlayers()) {
-            getFromCache(player).ifPresent(sync -> {
-                if (!saveSynchronously(sync)) {
-                    failedSaves.getAndIncrement();
-                }
-            });
+            getFromCache(player).ifPresent(online::add);
         }
-        if (failedSaves.get() > 0) {
-            loggerService.info(failedSaves + " objects failed to save during shutdown");
+        CacheSaveResult result = saveAllSynchronously(online);
+        if (result.getFailed() > 0) {
+            loggerService.info(result.getFailed() + " objects failed to save during shutdown");
         }
 
         // Shutdown Handshake and Updater
@@ -160,20 +158,11 @@ public abstract class SyncProfileCache<X extends SyncProfile> extends SyncCache<
 
     @Override
     public @NotNull CacheSaveResult saveAllOnline() {
-        AtomicInteger total = new AtomicInteger();
-        AtomicInteger failures = new AtomicInteger();
+        List<X> online = new ArrayList<>();
         for (Player p : this.getPlugin().getServer().getOnlinePlayers()) {
-            @NotNull X sync = this.get(p);
-            if (sync.isReadOnly()) {
-                continue;
-            }
-
-            total.getAndIncrement();
-            if (!this.saveSynchronously(sync)) {
-                failures.getAndIncrement();
-            }
+            online.add(this.get(p));
         }
-        return new CacheSaveResult(total.get(), failures.get());
+        return this.saveAllSynchronously(online);
     }
 
     @NotNull
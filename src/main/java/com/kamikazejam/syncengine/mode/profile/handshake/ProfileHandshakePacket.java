@@ -1,6 +1,5 @@
 package com.kamikazejam.syncengine.mode.profile.handshake;
 
-import com.kamikazejam.kamicommon.util.data.Pair;
 import com.kamikazejam.syncengine.mode.profile.handshake.struct.HandshakeData;
 import lombok.Getter;
 import lombok.Setter;
@@ -9,6 +8,9 @@ import org.jetbrains.annotations.Nullable;
 
 import java.util.UUID;
 
+/**
+ * The per-cache handshake of servers without the combined handshake (the legacy wire format, don't add fields).
+ */
 @Getter
 @SuppressWarnings({"DuplicatedCode", "unused"})
 public class ProfileHandshakePacket {
@@ -28,7 +30,7 @@ public class ProfileHandshakePacket {
     private HandshakeData data;
 
     public ProfileHandshakePacket() {}
-    public ProfileHandshakePacket(boolean request, boolean login, long msStart, @NotNull String senderServer, @NotNull UUID uuid, @NotNull String targetServer, @NotNull UUID handshakeId, @Nullable Pair<String, Long> data) {
+    public ProfileHandshakePacket(boolean request, boolean login, long msStart, @NotNull String senderServer, @NotNull UUID uuid, @NotNull String targetServer, @NotNull UUID handshakeId) {
         this.request = request;
         this.login = login;
         this.msStartHandshake = msStart;
@@ -36,7 +38,6 @@ public class ProfileHandshakePacket {
         this.uuid = uuid;
         this.targetServer = targetServer;
         this.handshakeId = handshakeId;
-        this.data = data == null ? null : new HandshakeData(data.getA(), data.getB());
     }
 
     public @NotNull String getVersion(String def) {
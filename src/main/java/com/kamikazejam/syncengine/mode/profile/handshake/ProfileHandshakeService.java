@@ -5,26 +5,33 @@ import com.kamikazejam.kamicommon.redis.RedisChannel;
 import com.kamikazejam.kamicommon.util.PlayerUtil;
 import com.kamikazejam.syncengine.EngineSource;
 import com.kamikazejam.syncengine.base.Service;
+import com.kamikazejam.syncengine.connections.redis.PendingRequests;
 import com.kamikazejam.syncengine.connections.redis.RedisService;
 import com.kamikazejam.syncengine.mode.profile.SyncProfile;
 import com.kamikazejam.syncengine.mode.profile.SyncProfileCache;
+import com.kamikazejam.syncengine.mode.profile.handshake.combined.CombinedHandshakeService;
 import com.kamikazejam.syncengine.mode.profile.handshake.struct.HandshakeData;
 import com.kamikazejam.syncengine.mode.profile.loader.SyncProfileLoader;
 import com.kamikazejam.syncengine.server.ServerService;
 import com.kamikazejam.syncengine.server.SyncServer;
 import com.kamikazejam.syncengine.util.JacksonUtil;
+import com.kamikazejam.syncengine.util.Settings;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Prepares this cache's profiles for handshakes, which are sent and answered by the {@link CombinedHandshakeService}.
+ * Servers without the combined handshake (older versions) still use the per-cache handshake on the shared legacy
+ *  channel, so this service answers their requests (with plain json) and sends them ours.
+ */
 public class ProfileHandshakeService<X extends SyncProfile> implements Service {
 
-    private final Map<UUID, CompletableFuture<@Nullable HandshakeData>> handshakeMap = new HashMap<>();
+    private final PendingRequests<@Nullable HandshakeData> handshakeMap;
 
     private final SyncProfileCache<X> cache;
     private final String channelName;
@@ -37,6 +44,7 @@ public class ProfileHandshakeService<X extends SyncProfile> implements Service {
         Preconditions.checkNotNull(cache.getName(), "Cache name cannot be null");
         this.cache = cache;
         this.channelName = "sync-profile-handshake-" + cache.getName();
+        this.handshakeMap = PendingRequests.create("legacy-handshake-" + cache.getName(), Settings.HANDSHAKE_TIMEOUT_SEC + 3L, TimeUnit.SECONDS);
     }
 
     @Override
@@ -56,10 +64,10 @@ public class ProfileHandshakeService<X extends SyncProfile> implements Service {
     }
 
     @Override
-    @SuppressWarnings("all")
     public boolean shutdown() {
         Preconditions.checkState(running, "Profile Handshake Service is not running!");
         running = false;
+        handshakeMap.close(null);
         return true;
     }
 
@@ -68,14 +76,17 @@ public class ProfileHandshakeService<X extends SyncProfile> implements Service {
         return running;
     }
 
+    // ----------------------------------------------------- //
+    //                   Legacy Handshakes                   //
+    // ----------------------------------------------------- //
     private boolean subscribe(@NotNull RedisService redis, @NotNull ServerService server) {
         if (this.channel == null) {
             this.channel = redis.getApi().registerChannel(ProfileHandshakePacket.class, this.channelName);
         }
 
-        // Listen for incoming packets
+        // Listen for incoming packets (the legacy channel is shared, so filter by target)
         channel.subscribe((c, packet) -> {
-            if (!packet.getTargetServer().equals(server.getThisServer().getName())) { return; }
+            if (!server.getThisServer().getName().equals(packet.getTargetServer())) { return; }
             // Use the request boolean to differentiate between requests and replies
             if (packet.isRequest()) {
                 handleRequest(packet);
@@ -87,75 +98,95 @@ public class ProfileHandshakeService<X extends SyncProfile> implements Service {
     }
 
     private void handleRequest(@NotNull final ProfileHandshakePacket packet) {
-        @Nullable RedisService redisService = EngineSource.getRedisService();
         @Nullable ServerService serverService = EngineSource.getServerService();
-        Preconditions.checkNotNull(redisService, "RedisService cannot be null");
         Preconditions.checkNotNull(serverService, "ServerService cannot be null");
 
-        Preconditions.checkNotNull(packet, "ProfileHandshakePacket cannot be null");
-        // Another server is being joined by the player (who is assuming-ly on this server)
-        // - check if they're online, if they are: save them
-        // - after save (or if they're not online) send reply
-        cache.getLoggerService().debug("Received handshake request for " + packet.getUuid() + " [" + packet.getSenderServer() + " -> " + packet.getTargetServer() + "] (login: " + packet.isLogin() + ")");
+        // Only older servers send these, reply in the format they can read (plain json)
+        cache.getLoggerService().debug("Received legacy handshake request for " + packet.getUuid() + " [" + packet.getSenderServer() + " -> " + packet.getTargetServer() + "] (login: " + packet.isLogin() + ")");
         final @Nullable Player player = cache.getPlugin().getServer().getPlayer(packet.getUuid());
 
-        // Run async, asap (cache.runAsync uses Bukkit, which may wait for tick completion (which is slow: 0-50ms))
-        CompletableFuture.supplyAsync(() -> {
-            if (PlayerUtil.isFullyValidPlayer(player)) {
-                // This cache operation is just a map lookup, it doesn't matter which async executor we use
-                cache.getFromCache(player).ifPresent(profile -> {
-                    // If this handshake represents a login from another server, fire the profile leaving method
-                    if (packet.isLogin()) {
-                        cache.onProfileLeavingLocal(player, profile);
-                        // If receiving a request from another server, and currently swapping there:
-                        //   1. set the object as 'read only'
-                        //   2. disable the autosave for that sync in SyncProfileCache (via readOnly)
-                        profile.setReadOnlyTimeStamp(System.currentTimeMillis());
-                    }
-
-                    packet.setData(new HandshakeData(JacksonUtil.toJson(profile), profile.getVersion()));
-                    profile.setHandshakeStartTimestamp(System.currentTimeMillis());
-
-                    // cache.save(profile); // no need to save when we're redis-ing the json
-                });
-            }
-            // Time to send the packet back as a reply (swap target/sender servers and update the JSON)
+        CompletableFuture.runAsync(() -> {
+            packet.setData(createData(player, packet.isLogin(), false, (byte) 0));
+            // Time to send the packet back as a reply (swap target/sender servers and set the data)
             packet.setTargetServer(packet.getSenderServer());
             packet.setSenderServer(serverService.getThisServer().getName());
             packet.setRequest(false); // Is a reply
 
             channel.publish(packet, false);
-            cache.getLoggerService().debug("Sending reply for handshake for UUID " + packet.getUuid() + " [" + packet.getSenderServer() + " -> " + packet.getTargetServer() + "] v" + packet.getVersion("?"));
+            cache.getLoggerService().debug("Sending reply for legacy handshake for UUID " + packet.getUuid() + " [" + packet.getSenderServer() + " -> " + packet.getTargetServer() + "] v" + packet.getVersion("?"));
+        }, EngineSource.getStorageService().getExecutor()).exceptionally(t -> {
+            // The legacy format has no failure reply (an empty reply would make the requester load stale data)
+            cache.getLoggerService().info(t, "Failed to reply to legacy handshake for " + packet.getUuid());
             return null;
         });
     }
 
     private void handleReply(@NotNull ProfileHandshakePacket packet) {
-        Preconditions.checkNotNull(packet, "ProfileHandshakePacket cannot be null");
-        Preconditions.checkNotNull(packet.getData(), "JSON cannot be null for handshake in ProfileHandshakeService (in handleReply)");
-
-        // Require valid handshake
-        CompletableFuture<@Nullable HandshakeData> future = handshakeMap.get(packet.getHandshakeId());
-        if (future == null || future.isDone()) { return; }
-
-        // Complete the future with the JSON of the profile
-        future.complete(packet.getData());
+        // An unknown id is a late reply for a timed out handshake
+        handshakeMap.complete(packet.getHandshakeId(), packet.getData());
     }
 
-    public CompletableFuture<@Nullable HandshakeData> requestHandshake(@NotNull SyncProfileLoader<?> loader, SyncServer targetServer, boolean login, long msStart) {
-        @Nullable RedisService redisService = EngineSource.getRedisService();
+    /**
+     * Request the handshake data of this cache from a server without the combined handshake.
+     * @return A future of the data, completed with null if the other server had no profile
+     */
+    public @NotNull CompletableFuture<@Nullable HandshakeData> requestLegacyHandshake(@NotNull SyncProfileLoader<?> loader, @NotNull SyncServer targetServer, boolean login, long msStart) {
+        Preconditions.checkNotNull(channel, "ProfileHandshakeService is not subscribed");
         @Nullable ServerService serverService = EngineSource.getServerService();
-        Preconditions.checkNotNull(redisService, "RedisService cannot be null");
         Preconditions.checkNotNull(serverService, "ServerService cannot be null");
+
         UUID handshakeId = UUID.randomUUID();
+        CompletableFuture<@Nullable HandshakeData> future = handshakeMap.register(handshakeId);
+        channel.publish(new ProfileHandshakePacket(true, login, msStart, serverService.getThisServer().getName(), loader.getUuid(), targetServer.getName(), handshakeId), false);
+        cache.getLoggerService().debug("Requesting legacy handshake for " + loader.getUuid() + " from " + targetServer.getName());
+        return future;
+    }
+
+    // ----------------------------------------------------- //
+    //                     Handshake Data                    //
+    // ----------------------------------------------------- //
+    /**
+     * Prepare this cache's profile for a handshake, and create the data to send in reply.
+     * @param staging If the data is being staged for a verified swap (which counts as the login handshake)
+     * @param codecVersion The payload codec version of the server reading the data (0 for plain json)
+     * @return The data of the player's cached profile, or null if they have no profile on this server
+     */
+    public @Nullable HandshakeData createData(@Nullable Player player, boolean login, boolean staging, byte codecVersion) {
+        if (!PlayerUtil.isFullyValidPlayer(player)) { return null; }
+
+        // This cache operation is just a map lookup, it doesn't matter which async executor we use
+        @Nullable X profile = cache.getFromCache(player).orElse(null);
+        if (profile == null) { return null; }
+
+        // If this handshake represents a login from another server, fire the profile leaving method
+        //  (unless it was already fired for this swap, when the profile was staged)
+        if (login) {
+            if (staging) {
+                cache.onProfileLeavingLocal(player, profile);
+                profile.setStagedTimestamp(System.currentTimeMillis());
+            } else if (!consumeStaged(profile)) {
+                cache.onProfileLeavingLocal(player, profile);
+            }
+            // If receiving a request from another server, and currently swapping there:
+            //   1. set the object as 'read only'
+            //   2. disable the autosave for that sync in SyncProfileCache (via readOnly)
+            profile.setReadOnlyTimeStamp(System.currentTimeMillis());
+        }
 
-        ProfileHandshakePacket packet = new ProfileHandshakePacket(true, login, msStart, serverService.getThisServer().getName(), loader.getUuid(), targetServer.getName(), handshakeId, null);
+        HandshakeData data = HandshakeData.create(JacksonUtil.toJson(profile), profile.getVersion(), codecVersion);
+        profile.setHandshakeStartTimestamp(System.currentTimeMillis());
 
-        // Send the handshake REQUEST to the target server
-        CompletableFuture<@Nullable HandshakeData> future = new CompletableFuture<>();
-        handshakeMap.put(handshakeId, future);
+        // cache.save(profile); // no need to save when we're redis-ing the json
+        return data;
+    }
 
-        channel.publish(packet, false);
-        return future;
+    /**
+     * @return If the profile was staged for a recent swap (clearing the mark, a login handshake only consumes it once)
+     */
+    private boolean consumeStaged(@NotNull X profile) {
+        long staged = profile.getStagedTimestamp();
+        if (staged <= 0) { return false; }
+        profile.setStagedTimestamp(0);
+        return System.currentTimeMillis() - staged < Settings.SWAP_PAYLOAD_TTL_SEC * 1000L;
     }
 }
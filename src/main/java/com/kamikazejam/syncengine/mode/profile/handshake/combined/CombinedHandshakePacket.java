@@ -0,0 +1,50 @@
+package com.kamikazejam.syncengine.mode.profile.handshake.combined;
+
+import com.kamikazejam.syncengine.mode.profile.handshake.struct.HandshakeData;
+import lombok.Getter;
+import lombok.Setter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A handshake for all of a player's profile caches at once.
+ * The request lists the cache names, the reply holds the data of every cache the player had a profile in.
+ */
+@Getter
+@SuppressWarnings({"DuplicatedCode", "unused"})
+public class CombinedHandshakePacket {
+
+    @Setter
+    private boolean request; // If this is a request or a reply
+    private boolean login;
+    private long msStartHandshake;
+    @Setter
+    private String senderServer;
+    private UUID uuid;
+    @Setter
+    private String targetServer;
+    private UUID handshakeId; // The id of this handshake, for completing it upon reply
+    private List<String> caches;
+    // cache name -> <json, version>
+    @Setter
+    private Map<String, HandshakeData> data = new HashMap<>();
+    // Set on a reply if the target server failed to create the data (the requester shouldn't wait for a timeout)
+    @Setter
+    private boolean failed = false;
+
+    public CombinedHandshakePacket() {}
+    public CombinedHandshakePacket(boolean login, long msStart, @NotNull String senderServer, @NotNull UUID uuid, @NotNull String targetServer, @NotNull UUID handshakeId, @NotNull List<String> caches) {
+        this.request = true;
+        this.login = login;
+        this.msStartHandshake = msStart;
+        this.senderServer = senderServer;
+        this.uuid = uuid;
+        this.targetServer = targetServer;
+        this.handshakeId = handshakeId;
+        this.caches = caches;
+    }
+}
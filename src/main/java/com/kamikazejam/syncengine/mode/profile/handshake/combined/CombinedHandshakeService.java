@@ -0,0 +1,416 @@
+package com.kamikazejam.syncengine.mode.profile.handshake.combined;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.kamikazejam.syncengine.EngineSource;
+import com.kamikazejam.syncengine.SyncEngineAPI;
+import com.kamikazejam.syncengine.base.Service;
+import com.kamikazejam.syncengine.base.error.LoggerService;
+import com.kamikazejam.syncengine.connections.redis.InboxChannel;
+import com.kamikazejam.syncengine.connections.redis.PendingRequests;
+import com.kamikazejam.syncengine.connections.redis.RedisService;
+import com.kamikazejam.syncengine.mode.profile.SyncProfileCache;
+import com.kamikazejam.syncengine.mode.profile.handshake.ProfileHandshakeService;
+import com.kamikazejam.syncengine.mode.profile.handshake.struct.HandshakeData;
+import com.kamikazejam.syncengine.mode.profile.loader.SyncProfileLoader;
+import com.kamikazejam.syncengine.server.ServerService;
+import com.kamikazejam.syncengine.server.SyncServer;
+import com.kamikazejam.syncengine.util.JacksonUtil;
+import com.kamikazejam.syncengine.util.PayloadCodec;
+import com.kamikazejam.syncengine.util.Settings;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Performs one handshake per player for all profile caches, instead of one round trip per cache.
+ * For a login, the first cache loader to request a handshake sends the request for every profile cache, and the
+ *  others share its reply. Other handshakes (i.e. offline data reads) only request the loader's own cache.
+ * When a swap is verified, the source server stages the profiles in Redis ({@link SwapPayload}), which are used instead
+ *  of a handshake when available.
+ * Every server advertises its payload codec version in Redis. Servers that don't (older versions, without the combined
+ *  handshake) are sent the per-cache legacy handshake instead (see {@link ProfileHandshakeService}).
+ * Only enables if there is a RedisService to use.
+ */
+@SuppressWarnings({"DuplicatedCode", "unused"})
+public class CombinedHandshakeService extends LoggerService implements Service {
+
+    private final PendingRequests<Map<String, HandshakeData>> handshakeMap = PendingRequests.create("handshake", Settings.HANDSHAKE_TIMEOUT_SEC + 3L, TimeUnit.SECONDS);
+    // Requests that can still be shared, dropped once they are too old to share (see Request#canShare)
+    private final Cache<UUID, Request> requests = CacheBuilder.newBuilder().expireAfterWrite(Settings.HANDSHAKE_TIMEOUT_SEC, TimeUnit.SECONDS).build();
+    private final Cache<UUID, SwapPayload> staged = CacheBuilder.newBuilder().expireAfterWrite(Settings.SWAP_PAYLOAD_TTL_SEC, TimeUnit.SECONDS).build();
+    // server name -> the codec version it advertised (0 for servers without the combined handshake)
+    private final Cache<String, Byte> peerVersions = CacheBuilder.newBuilder().expireAfterWrite(30, TimeUnit.SECONDS).build();
+    private final String channelName = "sync-profile-handshake";
+
+    private boolean running = false;
+    protected InboxChannel<CombinedHandshakePacket> channel = null;
+
+    public CombinedHandshakeService() {}
+
+    @Override
+    public boolean start() {
+        info("Starting CombinedHandshakeService...");
+        Preconditions.checkState(!running, "CombinedHandshakeService is already running!");
+
+        @Nullable RedisService redisService = EngineSource.getRedisService();
+        @Nullable ServerService serverService = EngineSource.getServerService();
+        if (redisService == null || serverService == null) {
+            // Do nothing without a RedisService and ServerService
+            return true;
+        }
+
+        boolean sub = subscribe(redisService, serverService);
+        try {
+            redisService.getApi().getCmdsSync().hset(getVersionsKey(), serverService.getThisServer().getName(), Byte.toString(PayloadCodec.VERSION));
+        } catch (Exception ex) {
+            // Other servers will send us legacy handshakes, which we still answer
+            info(ex, "Failed to advertise the handshake version");
+        }
+        running = true;
+        info("CombinedHandshakeService started!");
+        return sub;
+    }
+
+    @Override
+    @SuppressWarnings("all")
+    public boolean shutdown() {
+        Preconditions.checkState(running, "CombinedHandshakeService is not running!");
+        running = false;
+        @Nullable RedisService redisService = EngineSource.getRedisService();
+        @Nullable ServerService serverService = EngineSource.getServerService();
+        if (redisService != null && serverService != null) {
+            try {
+                redisService.getApi().getCmdsSync().hdel(getVersionsKey(), serverService.getThisServer().getName());
+            } catch (Exception ex) {
+                info(ex, "Failed to remove the handshake version");
+            }
+        }
+        handshakeMap.close(Map.of());
+        staged.invalidateAll();
+        requests.invalidateAll();
+        return true;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private boolean subscribe(@NotNull RedisService redis, @NotNull ServerService server) {
+        if (this.channel == null) {
+            this.channel = new InboxChannel<>(redis, CombinedHandshakePacket.class, this.channelName);
+        }
+
+        // Listen for incoming packets (only sent to this server's inbox)
+        channel.subscribe(server.getThisServer().getName(), packet -> {
+            // Use the request boolean to differentiate between requests and replies
+            if (packet.isRequest()) {
+                handleRequest(packet);
+            } else {
+                handleReply(packet);
+            }
+        });
+        return true;
+    }
+
+    // ----------------------------------------------------- //
+    //                        Replying                       //
+    // ----------------------------------------------------- //
+    private void handleRequest(@NotNull final CombinedHandshakePacket packet) {
+        @Nullable ServerService serverService = EngineSource.getServerService();
+        Preconditions.checkNotNull(serverService, "ServerService cannot be null");
+        Preconditions.checkNotNull(packet, "CombinedHandshakePacket cannot be null");
+
+        debug("Received handshake request for " + packet.getUuid() + " [" + packet.getSenderServer() + " -> " + packet.getTargetServer() + "] (login: " + packet.isLogin() + ", caches: " + packet.getCaches().size() + ")");
+        final @Nullable Player player = Bukkit.getServer().getPlayer(packet.getUuid());
+
+        final String requester = packet.getSenderServer();
+        // Run async, asap (Bukkit async tasks may wait for tick completion (which is slow: 0-50ms))
+        CompletableFuture.runAsync(() -> {
+            Map<String, HandshakeData> data = createAll(player, packet.getUuid(), new HashSet<>(packet.getCaches()), packet.isLogin(), false);
+
+            // Time to send the packet back as a reply (swap target/sender servers and set the data)
+            packet.setData(data);
+            reply(packet, requester, serverService);
+            debug("Sending reply for handshake for UUID " + packet.getUuid() + " [" + packet.getSenderServer() + " -> " + packet.getTargetServer() + "] (" + data.size() + " profiles)");
+        }, EngineSource.getStorageService().getExecutor()).exceptionally(t -> {
+            info(t, "Failed to reply to handshake for " + packet.getUuid() + " from " + requester);
+            try {
+                // Tell the requester, rather than letting it time out
+                packet.setData(Map.of());
+                packet.setFailed(true);
+                reply(packet, requester, serverService);
+            } catch (Exception ex) {
+                info(ex, "Failed to send handshake failure for " + packet.getUuid() + " to " + requester);
+            }
+            return null;
+        });
+    }
+
+    private void reply(@NotNull CombinedHandshakePacket packet, @NotNull String requester, @NotNull ServerService serverService) {
+        packet.setTargetServer(requester);
+        packet.setSenderServer(serverService.getThisServer().getName());
+        packet.setRequest(false); // Is a reply
+        channel.publish(requester, packet);
+    }
+
+    /**
+     * Create the handshake data of the player's profiles, in the same order they are unloaded on quit (reverse dependencies)
+     * @param caches The names of the caches to include, or null for all profile caches
+     */
+    private @NotNull Map<String, HandshakeData> createAll(@Nullable Player player, @NotNull UUID uuid, @Nullable Set<String> caches, boolean login, boolean staging) {
+        Map<String, HandshakeData> data = new HashMap<>();
+        for (com.kamikazejam.syncengine.base.Cache<?, ?> c : SyncEngineAPI.getSortedCachesByDependsReversed()) {
+            if (!(c instanceof SyncProfileCache<?> cache) || (caches != null && !caches.contains(cache.getName()))) { continue; }
+            try {
+                // Only servers that advertised the codec get the combined handshake (and staged payloads)
+                @Nullable HandshakeData d = cache.getHandshakeService().createData(player, login, staging, PayloadCodec.VERSION);
+                if (d != null) {
+                    data.put(cache.getName(), d);
+                }
+            } catch (Throwable t) {
+                // The requester will load this cache from the database
+                cache.getLoggerService().info(t, "Failed to create handshake data for " + uuid);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Stage the profiles of a player that is leaving this server (for a verified swap), so the target server can load
+     *  them with a single GET instead of a handshake. The profiles are prepared as if a login handshake was received.
+     */
+    public void stageProfiles(@NotNull Player player) {
+        @Nullable RedisService redisService = EngineSource.getRedisService();
+        @Nullable ServerService serverService = EngineSource.getServerService();
+        if (redisService == null || serverService == null) { return; }
+
+        try {
+            long ms = System.currentTimeMillis();
+            Map<String, HandshakeData> data = createAll(player, player.getUniqueId(), null, true, true);
+            if (data.isEmpty()) { return; }
+
+            SwapPayload payload = new SwapPayload(serverService.getThisServer().getName(), data);
+            redisService.getApi().getCmdsSync().setex(getPayloadKey(player.getUniqueId()), Settings.SWAP_PAYLOAD_TTL_SEC, JacksonUtil.serialize(payload));
+            debug("Staged " + data.size() + " profiles for " + player.getName() + " in " + (System.currentTimeMillis() - ms) + "ms");
+        } catch (Throwable t) {
+            // The target server will fall back to a handshake
+            info(t, "Failed to stage profiles for " + player.getName());
+        }
+    }
+
+    /**
+     * Load (and remove) the profiles staged by the source server of a verified swap, they are used by
+     *  {@link #requestHandshake(SyncProfileLoader, SyncServer, boolean, long)} in place of a handshake.
+     */
+    public void loadStaged(@NotNull UUID uuid, @NotNull String sourceServer) {
+        @Nullable RedisService redisService = EngineSource.getRedisService();
+        if (redisService == null) { return; }
+
+        try {
+            @Nullable String json = redisService.getApi().getCmdsSync().getdel(getPayloadKey(uuid));
+            @Nullable SwapPayload payload = JacksonUtil.deserialize(SwapPayload.class, json);
+            if (payload == null || payload.getProfiles() == null) {
+                debug("No staged profiles for " + uuid + ", using handshake");
+                return;
+            }
+            if (!sourceServer.equals(payload.getSourceServer())) {
+                debug("Ignoring staged profiles for " + uuid + " from " + payload.getSourceServer() + " (expected " + sourceServer + ")");
+                return;
+            }
+            staged.put(uuid, payload);
+        } catch (Throwable t) {
+            info(t, "Failed to load staged profiles for " + uuid);
+        }
+    }
+
+    /**
+     * @return The staged data for the loader's cache, or null if there is none (or it is stale)
+     */
+    private @Nullable HandshakeData takeStaged(@NotNull SyncProfileLoader<?> loader, @NotNull SyncServer targetServer) {
+        @Nullable SwapPayload payload = staged.getIfPresent(loader.getUuid());
+        if (payload == null || !targetServer.getName().equals(payload.getSourceServer())) { return null; }
+
+        @Nullable HandshakeData data;
+        synchronized (payload) {
+            data = payload.getProfiles().remove(loader.getCache().getName());
+        }
+        if (data == null) { return null; }
+
+        // A newer copy than the staged one means the payload is stale, handshake instead
+        long localVersion = loader.getCache().getLocalStore().get(loader.getUuid()).map(p -> p.getVersion()).orElse(-1L);
+        if (data.getVersion() < localVersion) {
+            debug("Staged profile for " + loader.getUuid() + " in " + loader.getCache().getName() + " is stale (v" + data.getVersion() + " < v" + localVersion + ")");
+            return null;
+        }
+        return data;
+    }
+
+    private @NotNull String getPayloadKey(@NotNull UUID uuid) {
+        return "sync-swap-payload-" + SyncEngineAPI.getSyncServerGroup() + "-" + uuid;
+    }
+
+    // ----------------------------------------------------- //
+    //                       Requesting                      //
+    // ----------------------------------------------------- //
+    private void handleReply(@NotNull CombinedHandshakePacket packet) {
+        Preconditions.checkNotNull(packet, "CombinedHandshakePacket cannot be null");
+
+        if (packet.isFailed()) {
+            handshakeMap.fail(packet.getHandshakeId(), new IllegalStateException("Handshake failed on server: " + packet.getSenderServer()));
+            return;
+        }
+        // Complete the future with the data of every profile (if the handshake is still pending)
+        handshakeMap.complete(packet.getHandshakeId(), packet.getData() == null ? Map.of() : packet.getData());
+    }
+
+    /**
+     * Request the handshake data for the loader's cache.<br>
+     * If a handshake for this player (to the same server) is already in progress, its reply is shared.
+     * Otherwise, a new handshake is sent for all profile caches.
+     * @return A future of the data for the loader's cache, completed with null if the other server had no profile
+     */
+    public CompletableFuture<@Nullable HandshakeData> requestHandshake(@NotNull SyncProfileLoader<?> loader, SyncServer targetServer, boolean login, long msStart) {
+        Preconditions.checkNotNull(channel, "CombinedHandshakeService is not subscribed");
+        @Nullable ServerService serverService = EngineSource.getServerService();
+        Preconditions.checkNotNull(serverService, "ServerService cannot be null");
+
+        final String cacheName = loader.getCache().getName();
+
+        // Use the profile staged by the source server if we have it
+        @Nullable HandshakeData stagedData = takeStaged(loader, targetServer);
+        if (stagedData != null) {
+            debug("Using staged profile for " + loader.getUuid() + " in " + cacheName);
+            return CompletableFuture.completedFuture(stagedData);
+        }
+
+        if (getPeerVersion(targetServer.getName()) < PayloadCodec.VERSION) {
+            // An older server, it only answers the per-cache handshake
+            return loader.getCache().getHandshakeService().requestLegacyHandshake(loader, targetServer, login, msStart);
+        }
+
+        final List<Request> created = new ArrayList<>(1);
+        Request request = requests.asMap().compute(loader.getUuid(), (uuid, existing) -> {
+            if (existing != null && existing.canShare(targetServer.getName(), login) && existing.remaining.remove(cacheName)) {
+                return existing;
+            }
+            // Only a login needs every profile cache, other handshakes just fetch this one
+            UUID handshakeId = UUID.randomUUID();
+            Set<String> others = login ? profileCacheNames(uuid) : ConcurrentHashMap.newKeySet();
+            Request r = new Request(handshakeId, handshakeMap.register(handshakeId), targetServer.getName(), login, others);
+            r.remaining.remove(cacheName);
+            created.add(r);
+            return r;
+        });
+        // Every cache has taken its data, this request can no longer be shared
+        if (request.remaining.isEmpty()) {
+            requests.asMap().remove(loader.getUuid(), request);
+        }
+
+        if (!created.isEmpty()) {
+            // Send the handshake REQUEST to the target server
+            List<String> caches = new ArrayList<>(request.remaining);
+            caches.add(cacheName);
+            CombinedHandshakePacket packet = new CombinedHandshakePacket(login, msStart, serverService.getThisServer().getName(), loader.getUuid(), targetServer.getName(), request.handshakeId, caches);
+
+            request.future.whenComplete((d, t) -> {
+                if (t != null) { requests.asMap().remove(loader.getUuid(), request); }
+            });
+            debug("Requesting handshake for " + loader.getUuid() + " (" + caches.size() + " caches) from " + targetServer.getName());
+            channel.publish(targetServer.getName(), packet);
+        }
+
+        return request.future.thenApply(data -> data.get(cacheName));
+    }
+
+    /**
+     * @return The codec version the server advertised, 0 if it didn't (it doesn't support the combined handshake)
+     */
+    private byte getPeerVersion(@NotNull String server) {
+        try {
+            return peerVersions.get(server, () -> {
+                @Nullable RedisService redisService = EngineSource.getRedisService();
+                @Nullable String version = (redisService == null) ? null : redisService.getApi().getCmdsSync().hget(getVersionsKey(), server);
+                return (version == null) ? 0 : Byte.parseByte(version);
+            });
+        } catch (Exception ex) {
+            // Every server still answers the legacy handshake
+            info(ex, "Failed to read the handshake version of " + server);
+            return 0;
+        }
+    }
+
+    private @NotNull String getVersionsKey() {
+        return "sync-handshake-versions-" + SyncEngineAPI.getSyncServerGroup();
+    }
+
+    /**
+     * @return The names of the profile caches that still need data for this player (excluding staged profiles)
+     */
+    private @NotNull Set<String> profileCacheNames(@NotNull UUID uuid) {
+        Set<String> names = ConcurrentHashMap.newKeySet();
+        SyncEngineAPI.getCaches().values().forEach(c -> {
+            if (c instanceof SyncProfileCache<?>) { names.add(c.getName()); }
+        });
+        @Nullable SwapPayload payload = staged.getIfPresent(uuid);
+        if (payload != null) {
+            synchronized (payload) {
+                names.removeAll(payload.getProfiles().keySet());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * A handshake in progress, shared by the caches that have not yet taken their data
+     */
+    private static class Request {
+        private final UUID handshakeId;
+        private final CompletableFuture<Map<String, HandshakeData>> future;
+        private final String targetServer;
+        private final boolean login;
+        private final long created = System.currentTimeMillis();
+        private final Set<String> remaining;
+
+        private Request(UUID handshakeId, CompletableFuture<Map<String, HandshakeData>> future, String targetServer, boolean login, Set<String> remaining) {
+            this.handshakeId = handshakeId;
+            this.future = future;
+            this.targetServer = targetServer;
+            this.login = login;
+            this.remaining = remaining;
+        }
+
+        private boolean canShare(String targetServer, boolean login) {
+            // Don't hand out data from an old handshake (i.e. a cache that never requested its data)
+            long maxAge = TimeUnit.SECONDS.toMillis(Settings.HANDSHAKE_TIMEOUT_SEC);
+            return this.login == login && this.targetServer.equals(targetServer)
+                    && System.currentTimeMillis() - created < maxAge
+                    && !future.isCompletedExceptionally();
+        }
+    }
+
+    // ----------------------------------------------------- //
+    //                      LoggerService                    //
+    // ----------------------------------------------------- //
+    @Override
+    public String getLoggerName() {
+        return "CombinedHandshakeService";
+    }
+    @Override
+    public Plugin getPlugin() {
+        return EngineSource.get();
+    }
+    @Override
+    public boolean isDebug() {
+        return EngineSource.isDebug();
+    }
+}
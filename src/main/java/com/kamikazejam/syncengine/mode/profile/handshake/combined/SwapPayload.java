@@ -0,0 +1,27 @@
+package com.kamikazejam.syncengine.mode.profile.handshake.combined;
+
+import com.kamikazejam.syncengine.mode.profile.handshake.struct.HandshakeData;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The profiles of a player that is swapping servers, staged in Redis by the server they are leaving.
+ */
+@Getter
+@SuppressWarnings("unused")
+public class SwapPayload {
+    private String sourceServer;
+    private long createdAt;
+    // cache name -> <json, version>
+    private Map<String, HandshakeData> profiles = new HashMap<>();
+
+    public SwapPayload() {}
+    public SwapPayload(@NotNull String sourceServer, @NotNull Map<String, HandshakeData> profiles) {
+        this.sourceServer = sourceServer;
+        this.createdAt = System.currentTimeMillis();
+        this.profiles = profiles;
+    }
+}
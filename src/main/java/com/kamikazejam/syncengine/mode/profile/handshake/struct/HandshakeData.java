@@ -1,17 +1,43 @@
 package com.kamikazejam.syncengine.mode.profile.handshake.struct;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.kamikazejam.syncengine.util.PayloadCodec;
 import lombok.Getter;
 import lombok.Setter;
+import org.jetbrains.annotations.Nullable;
 
+/**
+ * The profile json is sent as an encoded payload (see {@link PayloadCodec}) to servers that support it,
+ *  and as a plain json string to older servers (which only know the json field).
+ */
 @Getter @Setter
 @SuppressWarnings("unused")
 public class HandshakeData {
-    private String json;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private @Nullable String json;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private byte @Nullable [] payload;
     private long version;
 
     public HandshakeData() {}
-    public HandshakeData(String json, long version) {
+    public HandshakeData(@Nullable String json, long version) {
         this.json = json;
         this.version = version;
     }
+
+    /**
+     * Create the data for a server that supports the given codec version (0 for servers without codec support)
+     */
+    public static HandshakeData create(String json, long version, byte codecVersion) {
+        if (codecVersion < PayloadCodec.VERSION) {
+            return new HandshakeData(json, version);
+        }
+        HandshakeData data = new HandshakeData(null, version);
+        data.payload = PayloadCodec.encode(json);
+        return data;
+    }
+
+    public @Nullable String decodeJson() {
+        return (payload != null) ? PayloadCodec.decode(payload) : json;
+    }
 }
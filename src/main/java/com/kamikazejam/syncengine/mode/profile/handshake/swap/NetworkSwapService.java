@@ -1,12 +1,13 @@
 package com.kamikazejam.syncengine.mode.profile.handshake.swap;
 
 import com.google.common.base.Preconditions;
-import com.kamikazejam.kamicommon.redis.RedisChannel;
 import com.kamikazejam.kamicommon.util.PlayerUtil;
 import com.kamikazejam.kamicommon.util.data.TriState;
 import com.kamikazejam.syncengine.EngineSource;
 import com.kamikazejam.syncengine.base.Service;
 import com.kamikazejam.syncengine.base.error.LoggerService;
+import com.kamikazejam.syncengine.connections.redis.InboxChannel;
+import com.kamikazejam.syncengine.connections.redis.PendingRequests;
 import com.kamikazejam.syncengine.connections.redis.RedisService;
 import com.kamikazejam.syncengine.mode.profile.listener.ProfileListener;
 import com.kamikazejam.syncengine.network.profile.NetworkProfile;
@@ -18,8 +19,6 @@ import org.bukkit.plugin.Plugin;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
@@ -30,11 +29,11 @@ import java.util.concurrent.TimeUnit;
 @SuppressWarnings({"DuplicatedCode", "unused"})
 public class NetworkSwapService extends LoggerService implements Service {
 
-    private final Map<UUID, CompletableFuture<Boolean>> verifications = new HashMap<>();
+    private final PendingRequests<Boolean> verifications = PendingRequests.create("swap", 5, TimeUnit.SECONDS);
     private final String channelName = "sync-network-swap-service";
 
     private boolean running = false;
-    protected RedisChannel<NetworkSwapPacket> channel = null;
+    protected InboxChannel<NetworkSwapPacket> channel = null;
 
     public NetworkSwapService() {}
 
@@ -61,6 +60,7 @@ public class NetworkSwapService extends LoggerService implements Service {
     public boolean shutdown() {
         Preconditions.checkState(running, "NetworkSwapService is not running!");
         running = false;
+        verifications.close(false);
         return true;
     }
 
@@ -71,12 +71,11 @@ public class NetworkSwapService extends LoggerService implements Service {
 
     private boolean subscribe(@NotNull RedisService redis, @NotNull ServerService server) {
         if (this.channel == null) {
-            this.channel = redis.getApi().registerChannel(NetworkSwapPacket.class, this.channelName);
+            this.channel = new InboxChannel<>(redis, NetworkSwapPacket.class, this.channelName);
         }
 
-        // Listen for messages
-        channel.subscribe((c, packet) -> {
-            if (!packet.getTargetServer().equalsIgnoreCase(server.getThisServer().getName())) { return; }
+        // Listen for messages (only sent to this server's inbox)
+        channel.subscribe(server.getThisServer().getName(), packet -> {
             // debug("Received message on channel: " + this.channelName + " - " + JacksonUtil.serialize(packet));
 
             if (packet.isRequest()) {
@@ -102,7 +101,7 @@ public class NetworkSwapService extends LoggerService implements Service {
         Preconditions.checkNotNull(packet, "NetworkSwapService cannot be null");
         final @Nullable Player player = Bukkit.getServer().getPlayer(packet.getUuid());
 
-        // Should be close to immediate, not requiring a future or async thread
+        // Should be close to immediate, not requiring a future or async thread (staging profiles is run async below)
         boolean online = PlayerUtil.isFullyValidPlayer(player);
         packet.setFound(TriState.byBoolean(online));
 
@@ -116,22 +115,28 @@ public class NetworkSwapService extends LoggerService implements Service {
         packet.setSenderServer(serverService.getThisServer().getName());
         packet.setRequest(false); // Is a reply
 
-        // Send the reply
-        channel.publishAsync(packet);
+        if (!online) {
+            channel.publish(packet.getTargetServer(), packet);
+            return;
+        }
+
+        // Stage the profiles for the target server before replying, so they are available once it has the reply
+        CompletableFuture.runAsync(() -> {
+            EngineSource.getHandshakeService().stageProfiles(player);
+            channel.publish(packet.getTargetServer(), packet);
+        });
     }
 
     private void handleReply(@NotNull NetworkSwapPacket packet) {
         Preconditions.checkNotNull(packet, "NetworkSwapService cannot be null");
 
-        // Require valid handshake
-        CompletableFuture<Boolean> future = verifications.get(packet.getHandshakeId());
-        if (future == null || future.isDone()) { return; }
+        // Require valid handshake (an unknown id is a late reply to a timed out request)
         TriState triState = packet.getFound();
         if (triState == null || triState == TriState.NOT_SET) {
-            future.completeExceptionally(new IllegalStateException("TriState is not set in NetworkSwapService (in handleReply)"));
+            verifications.fail(packet.getHandshakeId(), new IllegalStateException("TriState is not set in NetworkSwapService (in handleReply)"));
             return;
         }
-        future.complete(packet.getFound().toBoolean());
+        verifications.complete(packet.getHandshakeId(), triState.toBoolean());
     }
 
     public CompletableFuture<Boolean> requestVerification(NetworkProfile np, SyncServer targetServer) {
@@ -144,11 +149,8 @@ public class NetworkSwapService extends LoggerService implements Service {
         NetworkSwapPacket packet = new NetworkSwapPacket(true, System.nanoTime(), serverService.getThisServer().getName(), targetServer.getName(), np.getUUID(), np.getUsername(), handshakeId);
 
         // Send the handshake REQUEST to the target server
-        CompletableFuture<Boolean> future = new CompletableFuture<Boolean>()
-                .orTimeout(5, TimeUnit.SECONDS);
-        verifications.put(handshakeId, future);
-
-        channel.publishAsync(packet);
+        CompletableFuture<Boolean> future = verifications.register(handshakeId);
+        channel.publish(targetServer.getName(), packet);
         return future;
     }
 
@@ -16,6 +16,7 @@ import com.kamikazejam.syncengine.mode.profile.ProfileCache;
 import com.kamikazejam.syncengine.mode.profile.SyncProfile;
 import com.kamikazejam.syncengine.mode.profile.SyncProfileCache;
 import com.kamikazejam.syncengine.mode.profile.loader.SyncProfileLoader;
+import com.kamikazejam.syncengine.network.presence.PresenceDirectory;
 import com.kamikazejam.syncengine.network.profile.NetworkProfile;
 import com.kamikazejam.syncengine.server.ServerService;
 import com.kamikazejam.syncengine.server.SyncServer;
@@ -32,6 +33,7 @@ import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.plugin.IllegalPluginAccessException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -81,10 +83,14 @@ public class ProfileListener implements Listener {
 
         // Trigger a NetworkSwapHandshake in order to let the other server know about the swap
         //  and to validate that the player is on the lastSeenServer (if set in NetworkProfile)
-        NetworkProfile networkProfile = EngineSource.getNetworkService().getOrCreate(uniqueId, username);
+        // (read from Redis, a near-cached copy could point us at the wrong server)
+        NetworkProfile networkProfile = EngineSource.getNetworkService().getOrCreateLatest(uniqueId, username);
+        // Share this profile with the cache loaders and the join event, instead of fetching it again
+        loginProfiles.put(uniqueId, networkProfile);
         try {
             validateSwap(networkProfile);
         }catch (Throwable t) {
+            loginProfiles.invalidate(uniqueId);
             EngineSource.getSwapService().severe(t, "Error validating swap for " + username + " (" + uniqueId + ")");
             event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, ChatColor.RED + "A caching error occurred. Please try again.");
             return;
@@ -97,6 +103,7 @@ public class ProfileListener implements Listener {
             long timeout = Settings.HANDSHAKE_TIMEOUT_SEC;
             cachePlayerProfiles(username, uniqueId, ip, timeout).get(timeout + 3, TimeUnit.SECONDS);
         }catch (Throwable t) {
+            loginProfiles.invalidate(uniqueId);
             if (t instanceof ExecutionException e) {
                 if (e.getCause() instanceof CachingError error) {
                     event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, error.getMessage());
@@ -116,10 +123,8 @@ public class ProfileListener implements Listener {
         networkProfile.setLastSeenIP(ip);       // ensure valid and up-to-date data
         networkProfile.markSaved();
 
-        // Save async to prevent unnecessary blocking on join
-        Bukkit.getScheduler().runTaskAsynchronously(EngineSource.get(), () ->
-                EngineSource.getNetworkService().saveSync(networkProfile)
-        );
+        // Save async to prevent unnecessary blocking on join (a single write of the changed fields)
+        Bukkit.getScheduler().runTaskAsynchronously(EngineSource.get(), () -> EngineSource.getNetworkService().saveSync(networkProfile));
         EngineSource.getNetworkService().debug("Player " + username + " (" + uniqueId + ") marked as loaded in " + (System.currentTimeMillis() - ms) + "ms");
     }
 
@@ -156,7 +161,11 @@ public class ProfileListener implements Listener {
             // This will hopefully prevent the upcoming caches from trying to handshake
             //  since we just found the player is NOT on the lastSeenServer we thought they were
             networkProfile.setOnline(false);
+            return;
         }
+
+        // The source server staged the profiles before replying, load them for the upcoming caches
+        EngineSource.getHandshakeService().loadStaged(networkProfile.getUUID(), server.getName());
     }
 
 
@@ -198,13 +207,26 @@ public class ProfileListener implements Listener {
         });
 
         // Call the NetworkProfileLoginEvent if this is the first join for this Sync-Group
-        NetworkProfile profile = EngineSource.getNetworkService().getOrCreate(player);
+        @Nullable NetworkProfile loginProfile = loginProfiles.getIfPresent(player.getUniqueId());
+        loginProfiles.invalidate(player.getUniqueId());
+        NetworkProfile profile = (loginProfile != null) ? loginProfile : EngineSource.getNetworkService().getOrCreate(player);
         if (profile.isFirstJoinToSyncGroup()) {
             NetworkProfileLoginEvent e = new NetworkProfileLoginEvent(player, profile);
             Bukkit.getServer().getPluginManager().callEvent(e);
         }
+
+        // Only list the player once they have joined (a later pre-login handler may still deny the login)
+        @Nullable PresenceDirectory presence = EngineSource.getPresenceDirectory();
+        if (presence != null) {
+            String username = player.getName();
+            Bukkit.getScheduler().runTaskAsynchronously(EngineSource.get(), () -> presence.markOnline(player.getUniqueId(), username));
+        }
     }
 
+    /**
+     * The NetworkProfiles of players that are logging in, fetched once in the pre-login event
+     */
+    public static final Cache<UUID, NetworkProfile> loginProfiles = CacheBuilder.newBuilder().expireAfterWrite(30, TimeUnit.SECONDS).build();
     public static final Cache<UUID, Long> swapMap = CacheBuilder.newBuilder().expireAfterWrite(10, TimeUnit.SECONDS).build();
     @EventHandler(priority = EventPriority.MONITOR) // Run LAST
     public void onProfileQuit(final PlayerQuitEvent event) {
@@ -221,9 +243,14 @@ public class ProfileListener implements Listener {
         NetworkProfile profile = EngineSource.getNetworkService().getOrCreate(player);
         profile.markUnloaded(swappingServers);
         profile.markSaved();
-        Bukkit.getScheduler().runTaskAsynchronously(EngineSource.get(), () ->
-                EngineSource.getNetworkService().saveSync(profile)
-        );
+        Bukkit.getScheduler().runTaskAsynchronously(EngineSource.get(), () -> {
+            EngineSource.getNetworkService().saveSync(profile);
+            // If they are swapping, the target server will list them as online there
+            @Nullable PresenceDirectory presence = EngineSource.getPresenceDirectory();
+            if (presence != null && !swappingServers) {
+                presence.markOffline(player.getUniqueId());
+            }
+        });
         swapMap.invalidate(player.getUniqueId());
 
         if (swappingServers) {
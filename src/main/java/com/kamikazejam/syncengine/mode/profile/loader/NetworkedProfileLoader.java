@@ -4,6 +4,7 @@ import com.kamikazejam.kamicommon.util.Preconditions;
 import com.kamikazejam.syncengine.EngineSource;
 import com.kamikazejam.syncengine.mode.profile.SyncProfile;
 import com.kamikazejam.syncengine.mode.profile.handshake.struct.HandshakeData;
+import com.kamikazejam.syncengine.mode.profile.listener.ProfileListener;
 import com.kamikazejam.syncengine.network.profile.NetworkProfile;
 import com.kamikazejam.syncengine.server.ServerService;
 import com.kamikazejam.syncengine.server.SyncServer;
@@ -40,8 +41,9 @@ public class NetworkedProfileLoader {
             }
         }
 
-        // Otherwise we need to check for handshakes
-        NetworkProfile networkProfile = EngineSource.getNetworkService().getOrCreate(loader.uuid, loader.username);
+        // Otherwise we need to check for handshakes (logins share the profile fetched in the pre-login event)
+        @Nullable NetworkProfile loginProfile = loader.login ? ProfileListener.loginProfiles.getIfPresent(loader.uuid) : null;
+        NetworkProfile networkProfile = (loginProfile != null) ? loginProfile : EngineSource.getNetworkService().getOrCreate(loader.uuid, loader.username);
         loader.cache.getLoggerService().debug("NetworkLoad Sync " + loader.uuid + " (L: " + loader.login + ")");
 
         // If they are not on another server, load from local
@@ -82,10 +84,11 @@ public class NetworkedProfileLoader {
             //  completed more instantly if the handshake is successful
             // This also allows us to call this method multiple times asynchronously, each waiting for a result
 
-            CompletableFuture<@Nullable HandshakeData> future = L.cache.getHandshakeService().requestHandshake(L, server, L.login, msStart);
+            // One handshake is shared by all of this player's profile caches
+            CompletableFuture<@Nullable HandshakeData> future = EngineSource.getHandshakeService().requestHandshake(L, server, L.login, msStart);
             // Retrieve the handshake data (syncJson, version)
             @Nullable HandshakeData data = future.get(Settings.HANDSHAKE_TIMEOUT_SEC + 3L, TimeUnit.SECONDS);
-            @Nullable String syncJson = (data == null) ? null : data.getJson();
+            @Nullable String syncJson = (data == null) ? null : data.decodeJson();
 
             // Attempt to deserialize the Sync object received from the handshake
             @Nullable X temp = JacksonUtil.deserialize(L.cache.getSyncClass(), syncJson);
@@ -124,6 +124,13 @@ public class SyncProfileLoader<X extends SyncProfile> implements SyncLoader<X> {
 
     @NotNull
     public CompletableFuture<X> cacheOrCreate() {
+        // Cached profiles don't need a thread hop
+        Optional<X> cached = cache.getLocalStore().get(uuid);
+        if (cached.isPresent() && cached.get().isValid()) {
+            cached.get().setCache(cache);
+            return CompletableFuture.completedFuture(cached.get());
+        }
+
         return CompletableFuture.supplyAsync(() -> {
             Optional<X> o = fetch(true);
             if (o.isPresent()) {
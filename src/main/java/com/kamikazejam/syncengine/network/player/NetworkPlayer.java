@@ -1,6 +1,5 @@
 package com.kamikazejam.syncengine.network.player;
 
-import com.kamikazejam.kamicommon.util.JacksonUtil;
 import com.kamikazejam.kamicommon.util.PlayerUtil;
 import com.kamikazejam.syncengine.EngineSource;
 import com.kamikazejam.syncengine.network.player.actions.PlayerAction;
@@ -11,8 +10,7 @@ import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -28,7 +26,7 @@ public class NetworkPlayer {
     }
 
     public @NotNull NetworkProfile getProfile() {
-        // Always fetch from NetworkService to ensure validity
+        // Fetch from NetworkService (served from memory when cached, kept valid by invalidations)
         return EngineSource.getNetworkService().getOrCreate(uuid);
     }
 
@@ -71,6 +69,43 @@ public class NetworkPlayer {
 
 
 
+    // ---------------------------------------------------------------------------- //
+    //                                 Batch Methods                                //
+    // ---------------------------------------------------------------------------- //
+    // Resolve many players at once (i.e. friend or staff lists), instead of one lookup per player
+
+    /**
+     * @return The NetworkProfiles of these players (players without a NetworkProfile are not included)
+     */
+    public static @NotNull Map<UUID, NetworkProfile> getProfiles(@NotNull Collection<UUID> uuids) {
+        return EngineSource.getNetworkService().getMany(uuids);
+    }
+
+    /**
+     * @return If each of these players is online in the sync group
+     */
+    public static @NotNull Map<UUID, Boolean> isOnline(@NotNull Collection<UUID> uuids) {
+        Map<UUID, NetworkProfile> profiles = getProfiles(uuids);
+        Map<UUID, Boolean> online = new HashMap<>();
+        uuids.forEach(uuid -> {
+            @Nullable NetworkProfile profile = profiles.get(uuid);
+            online.put(uuid, profile != null && profile.isOnline());
+        });
+        return online;
+    }
+
+    /**
+     * @return The usernames of these players (players without a known username are not included)
+     */
+    public static @NotNull Map<UUID, String> getUsernames(@NotNull Collection<UUID> uuids) {
+        Map<UUID, String> usernames = new HashMap<>();
+        getProfiles(uuids).forEach((uuid, profile) -> profile.getUsernameOptional().ifPresent(name -> usernames.put(uuid, name)));
+        return usernames;
+    }
+
+
+
+
     // ---------------------------------------------------------------------------- //
     //                              Player Access Methods                           //
     // ---------------------------------------------------------------------------- //
@@ -85,6 +120,7 @@ public class NetworkPlayer {
 
     /**
      * @return A future that completes with the result of the action (player found & performed OR not found & not executed)
+     *  or exceptionally with a {@link java.util.concurrent.TimeoutException} if the player's server did not reply in time
      */
     @NotNull
     public CompletableFuture<Boolean> completeAction(@NotNull PlayerAction action) {
@@ -97,13 +133,11 @@ public class NetworkPlayer {
             return CompletableFuture.completedFuture(true);
         }
 
-        // Otherwise, we need to serialize the action and send it to the player's server
-        String json = JacksonUtil.serialize(action);
-
-        // TODO figure out if redis or rabbitMQ is the best way of doing this
-        //  IDEALLY we have an RPC that responds with the result of the action (if the player could be found)
-
-        throw new UnsupportedOperationException("Not implemented yet");
+        // Otherwise, send the action to the player's server (resolved from presence data)
+        if (action.getUuid() == null) {
+            action.setUuid(uuid);
+        }
+        return EngineSource.getActionService().send(action);
     }
 
 
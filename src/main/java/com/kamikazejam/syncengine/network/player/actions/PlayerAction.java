@@ -1,6 +1,7 @@
 package com.kamikazejam.syncengine.network.player.actions;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.kamikazejam.syncengine.network.player.actions.jackson.PlayerActionDeserializer;
 import lombok.Getter;
 import lombok.Setter;
 import org.bukkit.entity.Player;
@@ -8,6 +9,10 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.UUID;
 
+/**
+ * An action performed on a player, on whichever server they are on.<br>
+ * Plugin actions must be registered with {@link PlayerActionDeserializer#register(String, Class)} on every server.
+ */
 @Getter @Setter
 @SuppressWarnings("unused")
 public abstract class PlayerAction {
@@ -15,11 +20,15 @@ public abstract class PlayerAction {
     public PlayerAction() {}
 
     @JsonProperty("type") // Must stay named "type" for PlayerActionDeserializer
-    private PlayerActionType type;
+    private String type;
     @JsonProperty("uuid")
     private UUID uuid;
 
     public PlayerAction(@NotNull PlayerActionType type, @NotNull UUID uuid) {
+        this(type.name(), uuid);
+    }
+
+    public PlayerAction(@NotNull String type, @NotNull UUID uuid) {
         this.type = type;
         this.uuid = uuid;
     }
@@ -0,0 +1,64 @@
+package com.kamikazejam.syncengine.network.player.actions;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A batch of PlayerActions and acknowledgements sent to a single server's inbox by the {@link PlayerActionService}
+ */
+@Getter @SuppressWarnings("unused")
+public class PlayerActionPacket {
+    private String senderServer;
+    private List<Delivery> actions = new ArrayList<>();
+    private List<Ack> acks = new ArrayList<>();
+
+    public PlayerActionPacket() {}
+    public PlayerActionPacket(@NotNull String senderServer) {
+        this.senderServer = senderServer;
+    }
+
+    public boolean isEmpty() {
+        return actions.isEmpty() && acks.isEmpty();
+    }
+
+    /**
+     * A single action on its way to the player's server
+     */
+    @Getter @SuppressWarnings("unused")
+    public static class Delivery {
+        private UUID actionId;      // The id of the pending request on the origin server
+        private String origin;      // The server awaiting the ack
+        private UUID player;
+        private String action;      // The PlayerAction json
+        @Setter
+        private int hops;           // How many times this action was re-routed
+
+        public Delivery() {}
+        public Delivery(@NotNull UUID actionId, @NotNull String origin, @NotNull UUID player, @NotNull String action) {
+            this.actionId = actionId;
+            this.origin = origin;
+            this.player = player;
+            this.action = action;
+        }
+    }
+
+    /**
+     * The result of a delivered action, sent back to its origin server
+     */
+    @Getter @SuppressWarnings("unused")
+    public static class Ack {
+        private UUID actionId;
+        private boolean performed;
+
+        public Ack() {}
+        public Ack(@NotNull UUID actionId, boolean performed) {
+            this.actionId = actionId;
+            this.performed = performed;
+        }
+    }
+}
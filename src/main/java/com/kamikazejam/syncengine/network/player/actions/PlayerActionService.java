@@ -0,0 +1,266 @@
+package com.kamikazejam.syncengine.network.player.actions;
+
+import com.google.common.base.Preconditions;
+import com.kamikazejam.kamicommon.util.PlayerUtil;
+import com.kamikazejam.syncengine.EngineSource;
+import com.kamikazejam.syncengine.base.Service;
+import com.kamikazejam.syncengine.base.error.LoggerService;
+import com.kamikazejam.syncengine.connections.redis.InboxChannel;
+import com.kamikazejam.syncengine.connections.redis.PendingRequests;
+import com.kamikazejam.syncengine.connections.redis.RedisService;
+import com.kamikazejam.syncengine.network.player.actions.jackson.PlayerActionDeserializer;
+import com.kamikazejam.syncengine.network.presence.PresenceDirectory;
+import com.kamikazejam.syncengine.network.presence.PresenceEntry;
+import com.kamikazejam.syncengine.network.profile.NetworkProfile;
+import com.kamikazejam.syncengine.server.ServerService;
+import com.kamikazejam.syncengine.util.JacksonUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Delivers PlayerActions to the server a player is on, and acknowledges the result back to the sending server.
+ * The owning server is looked up in the {@link PresenceDirectory}, and actions are only sent to that server's inbox.
+ * Actions (and acks) for the same server are buffered and sent as one packet each tick.
+ * If the player has moved by the time an action arrives, it is re-routed to their new server.
+ * Only enables if there is a RedisService to use.
+ */
+@SuppressWarnings("unused")
+public class PlayerActionService extends LoggerService implements Service {
+    private static final int MAX_HOPS = 3;
+    private static final int MAX_BATCH_SIZE = 100;
+
+    private final PendingRequests<Boolean> acks = PendingRequests.create("player-action", 5, TimeUnit.SECONDS);
+    private final String channelName;
+    // target server -> buffered packet
+    private final Map<String, PlayerActionPacket> outgoing = new ConcurrentHashMap<>();
+
+    private boolean running = false;
+    private InboxChannel<PlayerActionPacket> channel = null;
+    private @Nullable BukkitTask flushTask = null;
+
+    public PlayerActionService() {
+        this.channelName = "sync-player-action-" + EngineSource.getSyncServerGroup().toLowerCase();
+    }
+
+    @Override
+    public boolean start() {
+        Preconditions.checkState(!running, "PlayerActionService is already running!");
+
+        @Nullable RedisService redisService = EngineSource.getRedisService();
+        @Nullable ServerService serverService = EngineSource.getServerService();
+        if (redisService == null || serverService == null) {
+            // Do nothing without a RedisService and ServerService
+            return true;
+        }
+
+        this.channel = new InboxChannel<>(redisService, PlayerActionPacket.class, channelName);
+        this.channel.subscribe(serverService.getThisServer().getName(), this::handlePacket);
+        this.flushTask = Bukkit.getScheduler().runTaskTimerAsynchronously(EngineSource.get(), this::flush, 1L, 1L);
+        running = true;
+        return true;
+    }
+
+    @Override
+    public boolean shutdown() {
+        Preconditions.checkState(running, "PlayerActionService is not running!");
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        // Send anything still buffered (acks for other servers especially)
+        flush();
+        acks.close(false);
+        running = false;
+        return true;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // ----------------------------------------------------- //
+    //                        Sending                        //
+    // ----------------------------------------------------- //
+    /**
+     * Send an action to the server its player is on.
+     * @return A future with the result (true if the player was found and the action performed), completes
+     *  exceptionally with a {@link java.util.concurrent.TimeoutException} if no ack is received in time.
+     */
+    public @NotNull CompletableFuture<Boolean> send(@NotNull PlayerAction action) {
+        Preconditions.checkNotNull(action.getUuid(), "PlayerAction uuid cannot be null");
+        Preconditions.checkNotNull(action.getType(), "PlayerAction type cannot be null");
+        if (!running) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        @Nullable String target = findServer(action.getUuid());
+        if (target == null || target.equalsIgnoreCase(getThisServerName())) {
+            // Not online anywhere (and the caller has already checked this server)
+            return CompletableFuture.completedFuture(false);
+        }
+
+        UUID actionId = UUID.randomUUID();
+        CompletableFuture<Boolean> future = acks.register(actionId);
+        enqueue(target, packet -> packet.getActions().add(new PlayerActionPacket.Delivery(
+                actionId, getThisServerName(), action.getUuid(), JacksonUtil.serialize(action)
+        )));
+        return future;
+    }
+
+    /**
+     * @return The name of the server the player is on, or null if they are offline
+     */
+    private @Nullable String findServer(@NotNull UUID uuid) {
+        @Nullable PresenceDirectory presence = EngineSource.getPresenceDirectory();
+        if (presence != null && presence.isRunning()) {
+            return presence.get(uuid).map(PresenceEntry::getServer).orElse(null);
+        }
+
+        // Fallback to the NetworkProfile if the directory isn't available
+        @Nullable NetworkProfile profile = EngineSource.getNetworkService().getMany(List.of(uuid)).get(uuid);
+        return (profile != null && profile.isOnline()) ? profile.getLastSeenServer() : null;
+    }
+
+    private void enqueue(@NotNull String target, @NotNull Consumer<PlayerActionPacket> add) {
+        boolean full;
+        synchronized (outgoing) {
+            PlayerActionPacket packet = outgoing.computeIfAbsent(target.toLowerCase(), k -> new PlayerActionPacket(getThisServerName()));
+            add.accept(packet);
+            full = packet.getActions().size() + packet.getAcks().size() >= MAX_BATCH_SIZE;
+        }
+        if (full) {
+            CompletableFuture.runAsync(this::flush);
+        }
+    }
+
+    /**
+     * Send every buffered packet to its server
+     */
+    private void flush() {
+        if (outgoing.isEmpty()) { return; }
+
+        Map<String, PlayerActionPacket> packets;
+        synchronized (outgoing) {
+            packets = new HashMap<>(outgoing);
+            outgoing.clear();
+        }
+        packets.forEach((target, packet) -> {
+            if (packet.isEmpty()) { return; }
+            try {
+                channel.publish(target, packet);
+            } catch (Exception ex) {
+                info(ex, "Failed to send PlayerActions to server: " + target);
+                packet.getActions().forEach(d -> {
+                    if (d.getOrigin().equalsIgnoreCase(getThisServerName())) {
+                        acks.fail(d.getActionId(), ex);
+                    }
+                });
+            }
+        });
+    }
+
+    // ----------------------------------------------------- //
+    //                       Receiving                       //
+    // ----------------------------------------------------- //
+    private void handlePacket(@NotNull PlayerActionPacket packet) {
+        for (PlayerActionPacket.Ack ack : packet.getAcks()) {
+            // An unknown id is a late ack for a timed out action
+            acks.complete(ack.getActionId(), ack.isPerformed());
+        }
+        if (packet.getActions().isEmpty()) { return; }
+
+        // Players must be modified on the main thread
+        Bukkit.getScheduler().runTask(EngineSource.get(), () -> {
+            List<PlayerActionPacket.Delivery> moved = new ArrayList<>();
+            for (PlayerActionPacket.Delivery delivery : packet.getActions()) {
+                if (!handleDelivery(delivery)) {
+                    moved.add(delivery);
+                }
+            }
+            // Looking up the player's new server may block on Redis, so re-route off the main thread
+            if (!moved.isEmpty()) {
+                Bukkit.getScheduler().runTaskAsynchronously(EngineSource.get(), () -> moved.forEach(this::reroute));
+            }
+        });
+    }
+
+    /**
+     * @return If the player is on this server (and the action was performed or failed), false if it must be re-routed
+     */
+    private boolean handleDelivery(@NotNull PlayerActionPacket.Delivery delivery) {
+        @Nullable Player player = Bukkit.getPlayer(delivery.getPlayer());
+        if (!PlayerUtil.isFullyValidPlayer(player)) {
+            return false;
+        }
+
+        boolean performed;
+        try {
+            PlayerAction action = PlayerActionDeserializer.fromJson(delivery.getAction());
+            action.perform(player);
+            performed = true;
+        } catch (Exception ex) {
+            info(ex, "Failed to perform PlayerAction for " + delivery.getPlayer());
+            performed = false;
+        }
+        ack(delivery, performed);
+        return true;
+    }
+
+    // The player moved while the action was in flight, re-route it to their new server
+    private void reroute(@NotNull PlayerActionPacket.Delivery delivery) {
+        @Nullable String target;
+        try {
+            target = findServer(delivery.getPlayer());
+        } catch (Exception ex) {
+            info(ex, "Failed to find the server of " + delivery.getPlayer() + " to re-route a PlayerAction");
+            target = null;
+        }
+        if (target != null && !target.equalsIgnoreCase(getThisServerName()) && delivery.getHops() < MAX_HOPS) {
+            delivery.setHops(delivery.getHops() + 1);
+            debug("Re-routing PlayerAction for " + delivery.getPlayer() + " to " + target);
+            enqueue(target, packet -> packet.getActions().add(delivery));
+            return;
+        }
+        ack(delivery, false);
+    }
+
+    private void ack(@NotNull PlayerActionPacket.Delivery delivery, boolean performed) {
+        if (delivery.getOrigin().equalsIgnoreCase(getThisServerName())) {
+            // Re-routed back to the origin server
+            acks.complete(delivery.getActionId(), performed);
+            return;
+        }
+        enqueue(delivery.getOrigin(), packet -> packet.getAcks().add(new PlayerActionPacket.Ack(delivery.getActionId(), performed)));
+    }
+
+    private @NotNull String getThisServerName() {
+        return EngineSource.getSyncServerId();
+    }
+
+    // ----------------------------------------------------- //
+    //                      LoggerService                    //
+    // ----------------------------------------------------- //
+    @Override
+    public String getLoggerName() {
+        return "PlayerActionService";
+    }
+    @Override
+    public Plugin getPlugin() {
+        return EngineSource.get();
+    }
+    @Override
+    public boolean isDebug() {
+        return EngineSource.isDebug();
+    }
+}
@@ -3,9 +3,12 @@ package com.kamikazejam.syncengine.network.player.actions.impl;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.kamikazejam.kamicommon.nms.NmsAPI;
 import com.kamikazejam.syncengine.network.player.actions.PlayerAction;
+import com.kamikazejam.syncengine.network.player.actions.PlayerActionType;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.UUID;
+
 public class ActionClearInventory extends PlayerAction {
     @JsonProperty("armorSlots")
     private boolean armorSlots = true;          // 4 slots of armor
@@ -19,7 +22,13 @@ public class ActionClearInventory extends PlayerAction {
     @JsonProperty("offHandSlot")
     private boolean offHandSlot = true;         // The off-hand slot
 
-    public ActionClearInventory() {}
+    public ActionClearInventory() {
+        setType(PlayerActionType.CLEAR_INVENTORY.name());
+    }
+
+    public ActionClearInventory(@NotNull UUID uuid) {
+        super(PlayerActionType.CLEAR_INVENTORY, uuid);
+    }
 
     @Override
     public void perform(@NotNull Player player) {
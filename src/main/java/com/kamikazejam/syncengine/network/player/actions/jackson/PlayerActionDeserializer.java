@@ -5,20 +5,69 @@ import com.fasterxml.jackson.core.ObjectCodec;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Preconditions;
 import com.kamikazejam.syncengine.network.player.actions.PlayerAction;
 import com.kamikazejam.syncengine.network.player.actions.PlayerActionType;
+import com.kamikazejam.syncengine.util.JacksonUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class PlayerActionDeserializer extends JsonDeserializer<PlayerAction> {
+    // type -> action class, contains the built-in PlayerActionTypes and the actions registered by plugins
+    private static final Map<String, Class<? extends PlayerAction>> types = new ConcurrentHashMap<>();
+    static {
+        for (PlayerActionType type : PlayerActionType.CACHE) {
+            types.put(type.name(), type.getClazz());
+        }
+    }
+
+    /**
+     * Register a plugin's PlayerAction, so it can be received from other servers.
+     * @param type The type name, which must be set as the type of every instance of this action
+     */
+    public static void register(@NotNull String type, @NotNull Class<? extends PlayerAction> clazz) {
+        Preconditions.checkNotNull(type, "Type cannot be null");
+        Preconditions.checkNotNull(clazz, "Class cannot be null");
+        Class<? extends PlayerAction> existing = types.putIfAbsent(type, clazz);
+        Preconditions.checkArgument(existing == null || existing.equals(clazz), "PlayerAction type " + type + " is already registered to " + (existing == null ? "" : existing.getName()));
+    }
+
+    public static void unregister(@NotNull String type) {
+        types.remove(type);
+    }
+
+    public static @Nullable Class<? extends PlayerAction> getType(@NotNull String type) {
+        return types.get(type);
+    }
+
+    /**
+     * @return The PlayerAction in this json (of its registered type)
+     */
+    public static @NotNull PlayerAction fromJson(@NotNull String json) throws IOException {
+        JsonNode node = JacksonUtil.getMapper().readTree(json);
+        return JacksonUtil.getMapper().treeToValue(node, resolve(node));
+    }
 
     @Override
     public PlayerAction deserialize(JsonParser jp, DeserializationContext context) throws IOException {
         ObjectCodec codec = jp.getCodec();
         JsonNode node = codec.readTree(jp);
-        String typeStr = node.get("type").asText();
-        PlayerActionType type = PlayerActionType.valueOf(typeStr);
+        return codec.treeToValue(node, resolve(node));
+    }
 
-        return codec.treeToValue(node, type.getClazz());
+    private static @NotNull Class<? extends PlayerAction> resolve(@NotNull JsonNode node) throws IOException {
+        JsonNode typeNode = node.get("type");
+        if (typeNode == null || typeNode.isNull()) {
+            throw new IOException("PlayerAction json has no type");
+        }
+        @Nullable Class<? extends PlayerAction> clazz = types.get(typeNode.asText());
+        if (clazz == null) {
+            throw new IOException("Unknown PlayerAction type: " + typeNode.asText());
+        }
+        return clazz;
     }
 }
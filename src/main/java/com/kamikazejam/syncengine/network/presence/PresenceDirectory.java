@@ -0,0 +1,288 @@
+package com.kamikazejam.syncengine.network.presence;
+
+import com.google.common.base.Preconditions;
+import com.kamikazejam.kamicommon.lettuce.core.ScriptOutputType;
+import com.kamikazejam.kamicommon.lettuce.core.api.sync.RedisCommands;
+import com.kamikazejam.kamicommon.redis.RedisChannel;
+import com.kamikazejam.syncengine.EngineSource;
+import com.kamikazejam.syncengine.base.Service;
+import com.kamikazejam.syncengine.base.error.LoggerService;
+import com.kamikazejam.syncengine.connections.redis.RedisService;
+import com.kamikazejam.syncengine.server.ServerService;
+import com.kamikazejam.syncengine.server.SyncServer;
+import com.kamikazejam.syncengine.util.JacksonUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory table of the players online in this sync group (uuid -> server, username), replicated on every server.
+ * It is updated incrementally from join and quit events published by each server, and periodically reconciled
+ *  against a dedicated Redis hash of online players (which only holds online players, unlike the NetworkProfile hash).
+ * Only enables if there is a RedisService to use.
+ */
+@SuppressWarnings("unused")
+public class PresenceDirectory extends LoggerService implements Service {
+    private static final long RECONCILE_INTERVAL_TICKS = 20L * 30;
+    // Deletes a hash field only if it still holds the value we read (another server may have listed the player since)
+    private static final String DELETE_IF_UNCHANGED =
+            "if redis.call('HGET', KEYS[1], ARGV[1]) == ARGV[2] then return redis.call('HDEL', KEYS[1], ARGV[1]) end return 0";
+
+    private final Map<UUID, PresenceEntry> online = new ConcurrentHashMap<>();
+    // uuid -> sequence of the last join or quit applied for that player, so a reconcile never overrides a newer event
+    private final Map<UUID, Long> changed = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final String redisKey;
+    private final String channelName;
+
+    private boolean running = false;
+    private RedisChannel<PresencePacket> channel = null;
+    private @Nullable BukkitTask reconcileTask = null;
+
+    public PresenceDirectory() {
+        this.redisKey = EngineSource.getSyncServerGroup() + ":online";
+        this.channelName = "sync-presence-" + EngineSource.getSyncServerGroup().toLowerCase();
+    }
+
+    @Override
+    public boolean start() {
+        Preconditions.checkState(!running, "PresenceDirectory is already running!");
+
+        @Nullable RedisService redisService = EngineSource.getRedisService();
+        @Nullable ServerService serverService = EngineSource.getServerService();
+        if (redisService == null || serverService == null) {
+            // Do nothing without a RedisService and ServerService
+            return true;
+        }
+
+        this.channel = redisService.getApi().registerChannel(PresencePacket.class, channelName);
+        this.channel.subscribe((c, packet) -> this.apply(packet));
+
+        // Load the current directory, and reconcile it periodically
+        this.reconcileTask = Bukkit.getScheduler().runTaskTimerAsynchronously(EngineSource.get(), this::reconcile, 0L, RECONCILE_INTERVAL_TICKS);
+        running = true;
+        return true;
+    }
+
+    @Override
+    public boolean shutdown() {
+        Preconditions.checkState(running, "PresenceDirectory is not running!");
+        if (reconcileTask != null) {
+            reconcileTask.cancel();
+            reconcileTask = null;
+        }
+
+        // Players still on this server are leaving with it
+        String thisServer = getThisServerName();
+        new ArrayList<>(online.values()).forEach(entry -> {
+            if (thisServer.equals(entry.getServer())) {
+                markOffline(entry.getUuid());
+            }
+        });
+        online.clear();
+        changed.clear();
+        running = false;
+        return true;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // ----------------------------------------------------- //
+    //                        Queries                        //
+    // ----------------------------------------------------- //
+    public @NotNull Collection<PresenceEntry> getOnline() {
+        return Collections.unmodifiableCollection(online.values());
+    }
+
+    public @NotNull List<PresenceEntry> getOnline(@NotNull String server) {
+        return online.values().stream().filter(e -> server.equalsIgnoreCase(e.getServer())).toList();
+    }
+
+    public @NotNull Optional<PresenceEntry> get(@NotNull UUID uuid) {
+        return Optional.ofNullable(online.get(uuid));
+    }
+
+    public boolean isOnline(@NotNull UUID uuid) {
+        return online.containsKey(uuid);
+    }
+
+    public int getOnlineCount() {
+        return online.size();
+    }
+
+    // ----------------------------------------------------- //
+    //                        Updates                        //
+    // ----------------------------------------------------- //
+    /**
+     * Mark a player as online on this server (a join, or a switch from another server)
+     */
+    public void markOnline(@NotNull UUID uuid, @NotNull String username) {
+        if (!running) { return; }
+        PresenceEntry entry = new PresenceEntry(uuid, getThisServerName(), username);
+        put(entry);
+        try {
+            // Write before publishing, so a reconcile never removes an entry we have announced
+            getCommands().hset(redisKey, uuid.toString(), JacksonUtil.serialize(entry));
+            channel.publish(new PresencePacket(true, entry), false);
+        } catch (Exception ex) {
+            info(ex, "Error marking " + username + " (" + uuid + ") as online in the PresenceDirectory");
+        }
+    }
+
+    /**
+     * Mark a player as having left the sync group from this server (ignored if they are now on another server)
+     */
+    public void markOffline(@NotNull UUID uuid) {
+        if (!running) { return; }
+        String thisServer = getThisServerName();
+        @Nullable PresenceEntry current = online.get(uuid);
+        if (current != null && !thisServer.equals(current.getServer())) { return; }
+        remove(uuid, thisServer);
+
+        try {
+            @Nullable String json = getCommands().hget(redisKey, uuid.toString());
+            @Nullable PresenceEntry stored = JacksonUtil.deserialize(PresenceEntry.class, json);
+            if (stored != null && !thisServer.equals(stored.getServer())) { return; }
+            // The player joined another server since we read their entry
+            if (json != null && !deleteIfUnchanged(uuid.toString(), json)) { return; }
+
+            String username = (current != null) ? current.getUsername() : (stored != null ? stored.getUsername() : uuid.toString());
+            channel.publish(new PresencePacket(false, new PresenceEntry(uuid, thisServer, username)), false);
+        } catch (Exception ex) {
+            info(ex, "Error marking " + uuid + " as offline in the PresenceDirectory");
+        }
+    }
+
+    private void apply(@NotNull PresencePacket packet) {
+        @Nullable PresenceEntry entry = packet.getEntry();
+        if (entry == null || entry.getUuid() == null) { return; }
+        if (packet.isOnline()) {
+            put(entry);
+        } else {
+            remove(entry.getUuid(), entry.getServer());
+        }
+    }
+
+    private void put(@NotNull PresenceEntry entry) {
+        synchronized (online) {
+            changed.put(entry.getUuid(), sequence.incrementAndGet());
+            online.put(entry.getUuid(), entry);
+        }
+    }
+
+    // Only removes the player if they are still listed on the server that reported them leaving
+    private void remove(@NotNull UUID uuid, @NotNull String server) {
+        synchronized (online) {
+            changed.put(uuid, sequence.incrementAndGet());
+            online.computeIfPresent(uuid, (u, current) -> server.equals(current.getServer()) ? null : current);
+        }
+    }
+
+    /**
+     * Replace the directory with the online players stored in Redis, removing players of servers that are offline
+     *  (and players listed on this server that are not online here, i.e. a quit we failed to record).
+     * Players with a join or quit applied after the Redis snapshot was read keep their current entry (or absence).
+     */
+    private void reconcile() {
+        @Nullable ServerService serverService = EngineSource.getServerService();
+        if (serverService == null) { return; }
+        String thisServer = getThisServerName();
+
+        try {
+            long snapshot = sequence.get();
+            Map<String, String> stored = getCommands().hgetall(redisKey);
+            Map<UUID, PresenceEntry> fresh = new HashMap<>();
+            Map<String, String> stale = new HashMap<>();
+            List<PresenceEntry> notHere = new ArrayList<>();
+            stored.forEach((key, json) -> {
+                @Nullable PresenceEntry entry = JacksonUtil.deserialize(PresenceEntry.class, json);
+                if (entry == null || entry.getUuid() == null || !isServerOnline(serverService, entry.getServer())) {
+                    stale.put(key, json);
+                    return;
+                }
+                if (thisServer.equals(entry.getServer()) && Bukkit.getPlayer(entry.getUuid()) == null) {
+                    stale.put(key, json);
+                    notHere.add(entry);
+                    return;
+                }
+                fresh.put(entry.getUuid(), entry);
+            });
+
+            if (!stale.isEmpty()) {
+                // Entries rewritten since our snapshot (i.e. the player joined a server) are kept
+                stale.entrySet().removeIf(e -> !deleteIfUnchanged(e.getKey(), e.getValue()));
+                debug("Removed " + stale.size() + " stale entries from the PresenceDirectory");
+            }
+            // Tell the other servers too, they only drop the entries of offline servers themselves
+            notHere.stream()
+                    .filter(entry -> stale.containsKey(entry.getUuid().toString()))
+                    .forEach(entry -> channel.publish(new PresencePacket(false, entry), false));
+            synchronized (online) {
+                online.keySet().removeIf(uuid -> !fresh.containsKey(uuid) && !isNewer(uuid, snapshot));
+                fresh.forEach((uuid, entry) -> {
+                    if (!isNewer(uuid, snapshot)) {
+                        online.put(uuid, entry);
+                    }
+                });
+                // Events up to the snapshot are reflected in it, they no longer need to be tracked
+                changed.values().removeIf(seq -> seq <= snapshot);
+            }
+        } catch (Exception ex) {
+            info(ex, "Error reconciling the PresenceDirectory");
+        }
+    }
+
+    /**
+     * @return If the field still held the json we read, and was deleted
+     */
+    private boolean deleteIfUnchanged(@NotNull String field, @NotNull String json) {
+        Long deleted = getCommands().eval(DELETE_IF_UNCHANGED, ScriptOutputType.INTEGER, new String[]{ redisKey }, field, json);
+        return deleted != null && deleted > 0;
+    }
+
+    private boolean isNewer(@NotNull UUID uuid, long snapshot) {
+        @Nullable Long seq = changed.get(uuid);
+        return seq != null && seq > snapshot;
+    }
+
+    private boolean isServerOnline(@NotNull ServerService serverService, @Nullable String server) {
+        if (server == null) { return false; }
+        if (server.equalsIgnoreCase(getThisServerName())) { return true; }
+        return serverService.get(server).map(SyncServer::isOnline).orElse(false);
+    }
+
+    private @NotNull String getThisServerName() {
+        return EngineSource.getSyncServerId();
+    }
+
+    private @NotNull RedisCommands<String, String> getCommands() {
+        @Nullable RedisService redis = EngineSource.getRedisService();
+        Preconditions.checkNotNull(redis, "RedisService cannot be null");
+        return redis.getApi().getConnection().sync();
+    }
+
+    // ----------------------------------------------------- //
+    //                      LoggerService                    //
+    // ----------------------------------------------------- //
+    @Override
+    public String getLoggerName() {
+        return "PresenceDirectory";
+    }
+    @Override
+    public Plugin getPlugin() {
+        return EngineSource.get();
+    }
+    @Override
+    public boolean isDebug() {
+        return EngineSource.isDebug();
+    }
+}
@@ -0,0 +1,25 @@
+package com.kamikazejam.syncengine.network.presence;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.UUID;
+
+/**
+ * An online player in the {@link PresenceDirectory}
+ */
+@Getter @SuppressWarnings("unused")
+public class PresenceEntry {
+    private UUID uuid;
+    private String server;
+    private String username;
+    private long since;
+
+    public PresenceEntry() {}
+    public PresenceEntry(@NotNull UUID uuid, @NotNull String server, @NotNull String username) {
+        this.uuid = uuid;
+        this.server = server;
+        this.username = username;
+        this.since = System.currentTimeMillis();
+    }
+}
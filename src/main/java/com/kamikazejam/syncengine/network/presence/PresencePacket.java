@@ -0,0 +1,19 @@
+package com.kamikazejam.syncengine.network.presence;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Sent when a player joins (or switches to) a server, or leaves the sync group
+ */
+@Getter @SuppressWarnings("unused")
+public class PresencePacket {
+    private boolean online;
+    private PresenceEntry entry;
+
+    public PresencePacket() {}
+    public PresencePacket(boolean online, @NotNull PresenceEntry entry) {
+        this.online = online;
+        this.entry = entry;
+    }
+}
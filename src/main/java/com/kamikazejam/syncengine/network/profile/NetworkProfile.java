@@ -15,10 +15,11 @@ import org.bukkit.entity.Player;
 import org.jetbrains.annotations.Blocking;
 import org.jetbrains.annotations.NonBlocking;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The profile for a given {@link Player} on a network (SyncEngine servers on the same SyncGroup & Redis).
@@ -27,10 +28,20 @@ import java.util.UUID;
 @Accessors(chain = true)
 @SuppressWarnings({"unused", "BooleanMethodIsAlwaysInverted"})
 public class NetworkProfile {
+    /**
+     * Fields that change often, and are stored separately from the rest of the profile (so they don't rewrite the json)
+     */
+    public static final List<String> SEPARATE_FIELDS = List.of("lastCached", "lastSaved", "lastSeen");
 
     @Setter
     protected transient String thisServerName;
 
+    // Dirty tracking, a save only writes the json when a json field changed, and the separate fields that changed
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    private transient boolean dirty = true;
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    private final transient Set<String> dirtyFields = ConcurrentHashMap.newKeySet(SEPARATE_FIELDS.size());
+
     private long lastCached = System.currentTimeMillis();
     private long lastSaved = System.currentTimeMillis();
     @Getter(AccessLevel.NONE)
@@ -76,23 +87,23 @@ public class NetworkProfile {
     }
 
     public void markLoaded(boolean online) {
-        this.online = online;
-        lastCached = System.currentTimeMillis();
+        setOnline(online);
+        setLastCached(System.currentTimeMillis());
         if (online) {
-            lastSeenServer = thisServerName;
-            lastSeen = System.currentTimeMillis();
+            setLastSeenServer(thisServerName);
+            setLastSeen(System.currentTimeMillis());
         }
     }
 
     public void markUnloaded(boolean switchingServers) {
-        online = switchingServers;
-        lastSeen = System.currentTimeMillis();
+        setOnline(switchingServers);
+        setLastSeen(System.currentTimeMillis());
     }
 
     public void markSaved() {
-        lastSaved = System.currentTimeMillis();
+        setLastSaved(System.currentTimeMillis());
         if (isOnlineThisServer()) {
-            lastSeen = System.currentTimeMillis();
+            setLastSeen(System.currentTimeMillis());
         }
     }
 
@@ -102,14 +113,143 @@ public class NetworkProfile {
 
     public void setUUID(@NotNull UUID uuid) {
         Preconditions.checkNotNull(uuid);
+        if (!uuid.equals(this.uuid)) { dirty = true; }
         this.uuid = uuid;
     }
 
     public void setUsername(@NotNull String username) {
         Preconditions.checkNotNull(username);
+        if (!username.equals(this.username)) { dirty = true; }
         this.username = username;
     }
 
+    public NetworkProfile setLastSeenIP(@Nullable String lastSeenIP) {
+        if (!Objects.equals(lastSeenIP, this.lastSeenIP)) { dirty = true; }
+        this.lastSeenIP = lastSeenIP;
+        return this;
+    }
+
+    public NetworkProfile setLastSeenServer(String lastSeenServer) {
+        if (!Objects.equals(lastSeenServer, this.lastSeenServer)) { dirty = true; }
+        this.lastSeenServer = lastSeenServer;
+        return this;
+    }
+
+    public NetworkProfile setOnline(boolean online) {
+        if (online != this.online) { dirty = true; }
+        this.online = online;
+        return this;
+    }
+
+    public NetworkProfile setFirstJoinToSyncGroup(boolean firstJoinToSyncGroup) {
+        if (firstJoinToSyncGroup != this.firstJoinToSyncGroup) { dirty = true; }
+        this.firstJoinToSyncGroup = firstJoinToSyncGroup;
+        return this;
+    }
+
+    public NetworkProfile setLastCached(long lastCached) {
+        if (lastCached != this.lastCached) { dirtyFields.add("lastCached"); }
+        this.lastCached = lastCached;
+        return this;
+    }
+
+    public NetworkProfile setLastSaved(long lastSaved) {
+        if (lastSaved != this.lastSaved) { dirtyFields.add("lastSaved"); }
+        this.lastSaved = lastSaved;
+        return this;
+    }
+
+    public NetworkProfile setLastSeen(long lastSeen) {
+        if (lastSeen != this.lastSeen) { dirtyFields.add("lastSeen"); }
+        this.lastSeen = lastSeen;
+        return this;
+    }
+
+    // ----------------------------------------------------- //
+    //                     Dirty Tracking                    //
+    // ----------------------------------------------------- //
+    /**
+     * @return True iff a field stored in the json has changed since the last save (or this profile was never saved)
+     */
+    @ApiStatus.Internal
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * @return The {@link #SEPARATE_FIELDS} that changed since the last save
+     */
+    @ApiStatus.Internal
+    public @NotNull Set<String> getDirtyFields() {
+        return new HashSet<>(dirtyFields);
+    }
+
+    /**
+     * @return The value of one of the {@link #SEPARATE_FIELDS}
+     */
+    @ApiStatus.Internal
+    public long getSeparateField(@NotNull String field) {
+        return switch (field) {
+            case "lastCached" -> lastCached;
+            case "lastSaved" -> lastSaved;
+            case "lastSeen" -> lastSeen;
+            default -> throw new IllegalArgumentException("Unknown separate field: " + field);
+        };
+    }
+
+    /**
+     * Set one of the {@link #SEPARATE_FIELDS} from its stored value
+     */
+    @ApiStatus.Internal
+    public void loadSeparateField(@NotNull String field, long value) {
+        switch (field) {
+            case "lastCached" -> lastCached = value;
+            case "lastSaved" -> lastSaved = value;
+            case "lastSeen" -> lastSeen = value;
+            default -> throw new IllegalArgumentException("Unknown separate field: " + field);
+        }
+    }
+
+    /**
+     * @return A separate instance with the same fields and dirty state (i.e. for the near-cache, which must not share
+     *  its instance with callers that modify it)
+     */
+    @ApiStatus.Internal
+    public @NotNull NetworkProfile copy() {
+        NetworkProfile copy = new NetworkProfile();
+        copy.thisServerName = thisServerName;
+        copy.uuid = uuid;
+        copy.username = username;
+        copy.lastSeenIP = lastSeenIP;
+        copy.lastSeenServer = lastSeenServer;
+        copy.online = online;
+        copy.firstJoinToSyncGroup = firstJoinToSyncGroup;
+        copy.lastCached = lastCached;
+        copy.lastSaved = lastSaved;
+        copy.lastSeen = lastSeen;
+        copy.dirty = dirty;
+        copy.dirtyFields.addAll(dirtyFields);
+        return copy;
+    }
+
+    /**
+     * Mark every field as changed (i.e. after a failed save)
+     */
+    @ApiStatus.Internal
+    public void markDirty() {
+        dirty = true;
+        dirtyFields.addAll(SEPARATE_FIELDS);
+    }
+
+    /**
+     * Mark this profile as matching the stored copy (after a load or save)
+     */
+    @ApiStatus.Internal
+    public void markClean() {
+        dirty = false;
+        dirtyFields.clear();
+    }
+
     public @NotNull String getUsername() {
         if (username == null) {
             username = IdUtilLocal.getName(uuid).orElse(null);
@@ -0,0 +1,21 @@
+package com.kamikazejam.syncengine.network.profile;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.UUID;
+
+/**
+ * Sent when a server saves a {@link NetworkProfile}, so other servers drop their in-memory copy
+ */
+@Getter @SuppressWarnings("unused")
+public class NetworkProfileInvalidation {
+    private String sourceServer;
+    private UUID uuid;
+
+    public NetworkProfileInvalidation() {}
+    public NetworkProfileInvalidation(@NotNull String sourceServer, @NotNull UUID uuid) {
+        this.sourceServer = sourceServer;
+        this.uuid = uuid;
+    }
+}
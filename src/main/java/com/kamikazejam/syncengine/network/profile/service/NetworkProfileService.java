@@ -14,9 +14,7 @@ import org.bukkit.plugin.Plugin;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
 
 @SuppressWarnings("unused")
 public abstract class NetworkProfileService extends LoggerService implements Service {
@@ -51,6 +49,21 @@ public abstract class NetworkProfileService extends LoggerService implements Ser
     @ApiStatus.Internal
     protected abstract Optional<NetworkProfile> get(@NotNull UUID uuid);
 
+    /**
+     * Like {@link #get(UUID)}, but always reads the stored profile (never an in-memory copy)
+     */
+    @ApiStatus.Internal
+    protected Optional<NetworkProfile> getLatest(@NotNull UUID uuid) {
+        return get(uuid);
+    }
+
+    /**
+     * Retrieves the NetworkProfiles of many players at once (in as few requests as possible)
+     * Players without a NetworkProfile are not included, and no NetworkProfiles are created
+     */
+    @NotNull
+    public abstract Map<UUID, NetworkProfile> getMany(@NotNull Collection<UUID> uuids);
+
     /**
      * Retrieves all NetworkProfiles in this store
      * @param onlyOnline if true, only return online profiles
@@ -123,8 +136,10 @@ public abstract class NetworkProfileService extends LoggerService implements Ser
         Preconditions.checkNotNull(uuid, "uuid cannot be null");
         Optional<NetworkProfile> o = get(uuid);
         NetworkProfile np = o.orElseGet(() -> create(uuid));
-        // Ensure the NetworkProfile is saved
-        this.saveSync(np);
+        // Ensure the NetworkProfile is saved (only new profiles need a write)
+        if (np.isDirty()) {
+            this.saveSync(np);
+        }
         return np;
     }
 
@@ -137,8 +152,26 @@ public abstract class NetworkProfileService extends LoggerService implements Ser
         Optional<NetworkProfile> o = get(uuid);
         o.ifPresent(p -> p.setUsername(username));
         NetworkProfile np = o.orElseGet(() -> create(uuid, username));
-        // Ensure the NetworkProfile is saved
-        this.saveSync(np);
+        // Ensure the NetworkProfile is saved (only new profiles, or a changed username need a write)
+        if (np.isDirty()) {
+            this.saveSync(np);
+        }
+        return np;
+    }
+
+    /**
+     * Gets a NetworkProfile by UUID (and updates username if necessary), reading the stored profile.
+     * Used on login, where the online state and last seen server decide which server we handshake with.
+     */
+    @NotNull
+    public final NetworkProfile getOrCreateLatest(@NotNull UUID uuid, @NotNull String username) {
+        Preconditions.checkNotNull(uuid, "uuid cannot be null");
+        Optional<NetworkProfile> o = getLatest(uuid);
+        o.ifPresent(p -> p.setUsername(username));
+        NetworkProfile np = o.orElseGet(() -> create(uuid, username));
+        if (np.isDirty()) {
+            this.saveSync(np);
+        }
         return np;
     }
 
@@ -161,8 +194,10 @@ public abstract class NetworkProfileService extends LoggerService implements Ser
             sync.getUsername().ifPresent(newNp::setUsername);
             return newNp;
         });
-        // Ensure the NetworkProfile is saved
-        this.saveSync(np);
+        // Ensure the NetworkProfile is saved (only new profiles, or a changed username need a write)
+        if (np.isDirty()) {
+            this.saveSync(np);
+        }
         return np;
     }
 
@@ -6,10 +6,9 @@ import com.kamikazejam.syncengine.server.SyncServer;
 import org.bukkit.Bukkit;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -38,6 +37,7 @@ public class NetworkProfileServiceLocal extends NetworkProfileService {
     @Override
     public boolean saveSync(@NotNull NetworkProfile profile) {
         profile.markSaved();
+        profile.markClean();
         localCache.put(profile.getUUID(), profile);
         return true;
     }
@@ -55,6 +55,18 @@ public class NetworkProfileServiceLocal extends NetworkProfileService {
                 .toList();
     }
 
+    @Override
+    public @NotNull Map<UUID, NetworkProfile> getMany(@NotNull Collection<UUID> uuids) {
+        Map<UUID, NetworkProfile> profiles = new HashMap<>();
+        for (UUID uuid : uuids) {
+            @Nullable NetworkProfile profile = localCache.get(uuid);
+            if (profile != null) {
+                profiles.put(uuid, profile);
+            }
+        }
+        return profiles;
+    }
+
     @Override @ApiStatus.Internal
     protected Optional<NetworkProfile> get(@NotNull UUID uuid) {
         return Optional.ofNullable(localCache.get(uuid));
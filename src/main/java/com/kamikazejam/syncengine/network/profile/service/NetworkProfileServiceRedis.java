@@ -1,32 +1,75 @@
 package com.kamikazejam.syncengine.network.profile.service;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Lists;
+import com.kamikazejam.kamicommon.lettuce.core.KeyValue;
 import com.kamikazejam.kamicommon.lettuce.core.api.StatefulRedisConnection;
+import com.kamikazejam.kamicommon.redis.RedisChannel;
 import com.kamikazejam.kamicommon.util.Preconditions;
 import com.kamikazejam.syncengine.EngineSource;
 import com.kamikazejam.syncengine.connections.redis.RedisService;
+import com.kamikazejam.syncengine.network.presence.PresenceDirectory;
+import com.kamikazejam.syncengine.network.presence.PresenceEntry;
 import com.kamikazejam.syncengine.network.profile.NetworkProfile;
+import com.kamikazejam.syncengine.network.profile.NetworkProfileInvalidation;
 import com.kamikazejam.syncengine.server.SyncServer;
 import com.kamikazejam.syncengine.util.JacksonUtil;
 import lombok.Getter;
 import lombok.SneakyThrows;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Collections;
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
 
 /**
  * The Networked NetworkProfileService implementation
  * This class assumes the presence of a RedisService.
+ * Each profile is stored in the sync group's hash as json (field: uuid), and its {@link NetworkProfile#SEPARATE_FIELDS}
+ *  are stored in their own fields (field: uuid:name), so they can be updated without rewriting the json.
+ * Profiles are kept in a bounded in-memory near-cache. Every save publishes a {@link NetworkProfileInvalidation}, which
+ *  makes the other servers drop their copy, and entries expire after a while in case an invalidation is missed.
+ * A read only fills the near-cache if no invalidation for that profile arrived while it was reading, and the
+ *  near-cache keeps its own copies (callers always receive an instance they can modify).
  */
 @Getter
 @SuppressWarnings({"DuplicatedCode", "unused"})
 public class NetworkProfileServiceRedis extends NetworkProfileService {
 
-    public NetworkProfileServiceRedis() {}
+    // How many profiles are fetched per HMGET in getMany
+    private static final int GET_MANY_CHUNK_SIZE = 250;
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final Cache<UUID, NetworkProfile> nearCache;
+    // Invalidation counters (striped by uuid), a read that overlaps an invalidation doesn't fill the near-cache
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final String invalidationChannelName;
+    private RedisChannel<NetworkProfileInvalidation> invalidationChannel = null;
+
+    public NetworkProfileServiceRedis() {
+        this.nearCache = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(0, EngineSource.getConfig().getInt("profiles.networkCacheSize", 10_000)))
+                .expireAfterWrite(Math.max(1, EngineSource.getConfig().getInt("profiles.networkCacheExpireSec", 60)), TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        this.invalidationChannelName = "sync-network-profile-invalidate-" + getHashKey().toLowerCase();
+
+        // Listen for saves made by other servers
+        @Nullable RedisService redis = EngineSource.getRedisService();
+        if (redis != null) {
+            this.invalidationChannel = redis.getApi().registerChannel(NetworkProfileInvalidation.class, invalidationChannelName);
+            this.invalidationChannel.subscribe((c, packet) -> {
+                if (packet.getUuid() == null || getThisServerName().equals(packet.getSourceServer())) { return; }
+                dropLocal(packet.getUuid());
+            });
+        }
+    }
 
     // ----------------------------------------------------- //
     //                  NetworkProfileStore                  //
@@ -40,7 +83,8 @@ public class NetworkProfileServiceRedis extends NetworkProfileService {
         if (!server.isOnline()) {
             try {
                 // Server is offline, we should unmark this player as being from there
-                getRedis().sync().hdel(hashKey, keyString);
+                getRedis().sync().hdel(hashKey, getFieldKeys(keyString).toArray(new String[0]));
+                invalidate(uuid);
             } catch (Exception ex) {
                 info(ex, "Error on hdel: " + uuid + " in Redis Network Service");
             }
@@ -67,68 +111,176 @@ public class NetworkProfileServiceRedis extends NetworkProfileService {
         Preconditions.checkNotNull(profile.getUUID(), "NetworkProfile UUID cannot be null");
         Preconditions.checkNotNull(profile.getUsername(), "NetworkProfile username cannot be null");
 
+        // Nothing changed -> nothing to write (and lastSaved keeps the time of the last real write)
+        if (!profile.isDirty() && profile.getDirtyFields().isEmpty()) { return true; }
         profile.markSaved(); // Mark saved
 
+        final UUID uuid = profile.getUUID();
         final String hashKey = getHashKey();
-        final String keyString = getKeyString(profile.getUUID());
+        final String keyString = getKeyString(uuid);
         Preconditions.checkNotNull(hashKey, "Hash key cannot be null");
         Preconditions.checkNotNull(keyString, "Key cannot be null");
 
-        // Convert networkProfile into a json string
-        String json = JacksonUtil.serialize(profile);
-        Preconditions.checkNotNull(json, "JSON cannot be null");
+        // Only write what changed (the json if any of its fields changed, and the changed separate fields)
+        boolean writeJson = profile.isDirty();
+        Set<String> fields = writeJson ? new HashSet<>(NetworkProfile.SEPARATE_FIELDS) : profile.getDirtyFields();
+        profile.markClean();
+
+        Map<String, String> values = new HashMap<>();
+        if (writeJson) {
+            // Convert networkProfile into a json string
+            String json = JacksonUtil.serialize(profile);
+            Preconditions.checkNotNull(json, "JSON cannot be null");
+            values.put(keyString, json);
+        }
+        fields.forEach(field -> values.put(getFieldKey(keyString, field), Long.toString(profile.getSeparateField(field))));
 
         try {
+            // A single HSET for all fields, then tell the other servers to drop their copy
+            // Ours is the newest copy, and reads that started before this save must not replace it
+            generations.incrementAndGet(stripe(uuid));
+            nearCache.put(uuid, profile.copy());
             if (sync) {
-                getRedis().sync().hset(hashKey, keyString, json);
+                getRedis().sync().hset(hashKey, values);
+                publishInvalidation(uuid);
             } else {
-                getRedis().async().hset(hashKey, keyString, json);
+                getRedis().async().hset(hashKey, values).whenComplete((r, t) -> {
+                    if (t != null) {
+                        onSaveFailed(profile, t);
+                        return;
+                    }
+                    publishInvalidation(uuid);
+                });
             }
             return true;
         } catch (Exception ex) {
-            info(ex, "Error saving NetworkProfile in Redis Network Service for UUID: " + profile.getUUID());
+            onSaveFailed(profile, ex);
             return false;
         }
     }
 
+    private void onSaveFailed(@NotNull NetworkProfile profile, @NotNull Throwable t) {
+        // Keep the changes for the next save, and drop our copy of what wasn't written
+        profile.markDirty();
+        dropLocal(profile.getUUID());
+        info(t, "Error saving NetworkProfile in Redis Network Service for UUID: " + profile.getUUID());
+    }
+
     @Override @ApiStatus.Internal
     protected @NotNull Optional<NetworkProfile> get(@NotNull UUID uuid) {
         Preconditions.checkNotNull(uuid, "UUID cannot be null");
 
+        // Use our in-memory copy if we have one
+        @Nullable NetworkProfile cached = nearCache.getIfPresent(uuid);
+        if (cached != null) {
+            return Optional.of(cached.copy());
+        }
+        return getLatest(uuid);
+    }
+
+    @Override @ApiStatus.Internal
+    protected @NotNull Optional<NetworkProfile> getLatest(@NotNull UUID uuid) {
+        Preconditions.checkNotNull(uuid, "UUID cannot be null");
+
         final String hashKey = getHashKey();
         final String keyString = getKeyString(uuid);
         Preconditions.checkNotNull(hashKey, "Hash key cannot be null");
         Preconditions.checkNotNull(keyString, "Key cannot be null");
 
-        // We just need a connection to the redis, so we use IdProfile's since we know it's available
+        // Fetch the json and the separate fields in one round trip
         try {
-            if (getRedis().sync().hexists(hashKey, keyString)) {
-                final String json = getRedis().sync().hget(hashKey, keyString);
-                if (json != null && !json.isEmpty()) {
-                    return Optional.of(deserializeNetworkProfile(json));
-                } else {
-                    return Optional.empty();
-                }
-            } else {
-                return Optional.empty();
-            }
+            final long generation = generations.get(stripe(uuid));
+            List<KeyValue<String, String>> values = getRedis().sync().hmget(hashKey, getFieldKeys(keyString).toArray(new String[0]));
+            Optional<NetworkProfile> o = decode(values, 0);
+            o.ifPresent(profile -> cacheIfCurrent(uuid, generation, profile));
+            return o;
         } catch (Exception ex) {
             info(ex, "Error getting network profile from Key in Redis Network Service");
             return Optional.empty();
         }
     }
 
+    @Override
+    public @NotNull Map<UUID, NetworkProfile> getMany(@NotNull Collection<UUID> uuids) {
+        Preconditions.checkNotNull(uuids, "UUIDs cannot be null");
+        final String hashKey = getHashKey();
+        Preconditions.checkNotNull(hashKey, "Hash key cannot be null");
+
+        // Use our in-memory copies where we have them
+        Map<UUID, NetworkProfile> profiles = new ConcurrentHashMap<>();
+        List<UUID> missing = new ArrayList<>();
+        for (UUID uuid : new LinkedHashSet<>(uuids)) {
+            @Nullable NetworkProfile cached = nearCache.getIfPresent(uuid);
+            if (cached != null) {
+                profiles.put(uuid, cached.copy());
+            } else {
+                missing.add(uuid);
+            }
+        }
+        if (missing.isEmpty()) { return profiles; }
+
+        // Fetch the rest with one HMGET per chunk, and deserialize each chunk in parallel
+        // A failed chunk, or a profile that can't be decoded, is left out without affecting the others
+        final int stride = NetworkProfile.SEPARATE_FIELDS.size() + 1;
+        for (List<UUID> chunk : Lists.partition(missing, GET_MANY_CHUNK_SIZE)) {
+            try {
+                String[] fields = chunk.stream()
+                        .flatMap(uuid -> getFieldKeys(getKeyString(uuid)).stream())
+                        .toArray(String[]::new);
+                long[] chunkGenerations = chunk.stream().mapToLong(uuid -> generations.get(stripe(uuid))).toArray();
+                List<KeyValue<String, String>> values = getRedis().sync().hmget(hashKey, fields);
+
+                IntStream.range(0, chunk.size()).parallel().forEach(i -> {
+                    try {
+                        decode(values, i * stride).ifPresent(profile -> {
+                            cacheIfCurrent(chunk.get(i), chunkGenerations[i], profile);
+                            profiles.put(chunk.get(i), profile);
+                        });
+                    } catch (Exception ex) {
+                        info(ex, "Error decoding network profile for UUID: " + chunk.get(i));
+                    }
+                });
+            } catch (Exception ex) {
+                info(ex, "Error getting " + chunk.size() + " network profiles in Redis Network Service");
+            }
+        }
+        return profiles;
+    }
+
     @Override
     public @NotNull List<NetworkProfile> getAll(boolean online) {
         final String hashKey = getHashKey();
         Preconditions.checkNotNull(hashKey, "Hash key cannot be null");
 
+        // Online profiles come from the PresenceDirectory, without reading every profile ever stored
+        @Nullable PresenceDirectory presence = EngineSource.getPresenceDirectory();
+        if (online && presence != null && presence.isRunning()) {
+            List<UUID> uuids = presence.getOnline().stream().map(PresenceEntry::getUuid).toList();
+            return getMany(uuids).values().stream()
+                    .filter(NetworkProfile::isOnline)
+                    .toList();
+        }
+
         try {
-            return getRedis().sync().hgetall(hashKey).values().stream()
-                    .filter(json -> json != null && !json.isEmpty())
-                    .map(this::deserializeNetworkProfile)
-                    .filter(profile -> !online || profile.isOnline())
-                    .collect(Collectors.toList());
+            Map<String, String> all = getRedis().sync().hgetall(hashKey);
+            List<NetworkProfile> profiles = new ArrayList<>();
+            all.forEach((field, json) -> {
+                // Skip the separate fields, they are merged into their profile below
+                if (field.indexOf(':') >= 0 || json == null || json.isEmpty()) { return; }
+
+                NetworkProfile profile = deserializeNetworkProfile(json);
+                for (String name : NetworkProfile.SEPARATE_FIELDS) {
+                    @Nullable String value = all.get(getFieldKey(field, name));
+                    if (value != null) {
+                        loadSeparateField(profile, name, value);
+                    }
+                }
+                profile.markClean();
+                if (!online || profile.isOnline()) {
+                    profiles.add(profile);
+                }
+            });
+            return profiles;
         } catch (Exception ex) {
             info(ex, "Error getting all network profiles from Redis Network Service");
             return Collections.emptyList();
@@ -136,6 +288,55 @@ public class NetworkProfileServiceRedis extends NetworkProfileService {
     }
 
 
+    // ----------------------------------------------------- //
+    //                       Near Cache                      //
+    // ----------------------------------------------------- //
+    /**
+     * @return The hit/miss statistics of the in-memory NetworkProfile cache
+     */
+    public @NotNull CacheStats getNearCacheStats() {
+        return nearCache.stats();
+    }
+
+    public long getNearCacheSize() {
+        return nearCache.size();
+    }
+
+    /**
+     * Drop our copy of this profile, and tell the other servers to drop theirs
+     */
+    private void invalidate(@NotNull UUID uuid) {
+        dropLocal(uuid);
+        publishInvalidation(uuid);
+    }
+
+    private void dropLocal(@NotNull UUID uuid) {
+        // Bump first, so a read in progress doesn't put back what it read before this invalidation
+        generations.incrementAndGet(stripe(uuid));
+        nearCache.invalidate(uuid);
+    }
+
+    /**
+     * Fill the near-cache with a copy of this profile, unless it was invalidated since the read began
+     */
+    private void cacheIfCurrent(@NotNull UUID uuid, long generation, @NotNull NetworkProfile profile) {
+        if (generations.get(stripe(uuid)) != generation) { return; }
+        nearCache.put(uuid, profile.copy());
+    }
+
+    private static int stripe(@NotNull UUID uuid) {
+        return (uuid.hashCode() & Integer.MAX_VALUE) % GENERATION_STRIPES;
+    }
+
+    private void publishInvalidation(@NotNull UUID uuid) {
+        if (invalidationChannel == null) { return; }
+        try {
+            invalidationChannel.publish(new NetworkProfileInvalidation(getThisServerName(), uuid), false);
+        } catch (Exception ex) {
+            info(ex, "Error publishing NetworkProfile invalidation for UUID: " + uuid);
+        }
+    }
+
     // ----------------------------------------------------- //
     //                     Helper Methods                    //
     // ----------------------------------------------------- //
@@ -144,6 +345,51 @@ public class NetworkProfileServiceRedis extends NetworkProfileService {
         Preconditions.checkNotNull(redis, "RedisService cannot be null");
         return redis.getApi().getConnection();
     }
+    private @NotNull String getFieldKey(@NotNull String keyString, @NotNull String field) {
+        return keyString + ":" + field;
+    }
+
+    /**
+     * @return The json field, followed by the separate fields (in {@link NetworkProfile#SEPARATE_FIELDS} order)
+     */
+    private @NotNull List<String> getFieldKeys(@NotNull String keyString) {
+        List<String> keys = new ArrayList<>(NetworkProfile.SEPARATE_FIELDS.size() + 1);
+        keys.add(keyString);
+        NetworkProfile.SEPARATE_FIELDS.forEach(field -> keys.add(getFieldKey(keyString, field)));
+        return keys;
+    }
+
+    /**
+     * Decode a profile from the values of {@link #getFieldKeys(String)}, starting at the given offset
+     */
+    private @NotNull Optional<NetworkProfile> decode(@NotNull List<KeyValue<String, String>> values, int offset) {
+        if (values.size() <= offset || !values.get(offset).hasValue()) {
+            return Optional.empty();
+        }
+        final String json = values.get(offset).getValue();
+        if (json == null || json.isEmpty()) {
+            return Optional.empty();
+        }
+
+        NetworkProfile profile = deserializeNetworkProfile(json);
+        for (int i = 0; i < NetworkProfile.SEPARATE_FIELDS.size() && offset + 1 + i < values.size(); i++) {
+            KeyValue<String, String> kv = values.get(offset + 1 + i);
+            if (kv.hasValue()) {
+                loadSeparateField(profile, NetworkProfile.SEPARATE_FIELDS.get(i), kv.getValue());
+            }
+        }
+        profile.markClean();
+        return Optional.of(profile);
+    }
+
+    private void loadSeparateField(@NotNull NetworkProfile profile, @NotNull String field, @NotNull String value) {
+        try {
+            profile.loadSeparateField(field, Long.parseLong(value));
+        } catch (NumberFormatException ex) {
+            info(ex, "Invalid value for NetworkProfile field " + field + ": " + value);
+        }
+    }
+
     @SneakyThrows
     private @NotNull NetworkProfile deserializeNetworkProfile(@NotNull String json) {
         NetworkProfile profile = JacksonUtil.getMapper().readValue(json, NetworkProfile.class);
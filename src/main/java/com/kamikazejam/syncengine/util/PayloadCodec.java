@@ -0,0 +1,90 @@
+package com.kamikazejam.syncengine.util;
+
+import com.kamikazejam.syncengine.EngineSource;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes large json payloads (Sync states in handshakes and updates) for Redis packets.
+ * Packets are json, so embedding a json string escapes and inflates it; payloads are sent as bytes instead
+ *  (base64 in the packet), deflated when they are larger than 'packetCompressionThreshold'.
+ * <p>
+ * Format: [codec version][flags][data], so a future format can be negotiated with {@link #VERSION}.
+ */
+public class PayloadCodec {
+    /**
+     * The codec version this server writes and reads. Servers advertise it so peers only send what they can read.
+     */
+    public static final byte VERSION = 1;
+    private static final byte FLAG_RAW = 0;
+    private static final byte FLAG_DEFLATE = 1;
+
+    public static byte @NotNull [] encode(@NotNull String json) {
+        byte[] raw = json.getBytes(StandardCharsets.UTF_8);
+        boolean compress = raw.length > getCompressionThreshold();
+        byte[] data = compress ? deflate(raw) : raw;
+
+        byte[] out = new byte[data.length + 2];
+        out[0] = VERSION;
+        out[1] = compress ? FLAG_DEFLATE : FLAG_RAW;
+        System.arraycopy(data, 0, out, 2, data.length);
+        return out;
+    }
+
+    public static @NotNull String decode(byte @NotNull [] payload) {
+        if (payload.length < 2 || payload[0] > VERSION) {
+            throw new IllegalArgumentException("Unsupported payload codec version: " + (payload.length == 0 ? "?" : payload[0]));
+        }
+        return switch (payload[1]) {
+            case FLAG_RAW -> new String(payload, 2, payload.length - 2, StandardCharsets.UTF_8);
+            case FLAG_DEFLATE -> new String(inflate(payload, 2), StandardCharsets.UTF_8);
+            default -> throw new IllegalArgumentException("Unknown payload flags: " + payload[1]);
+        };
+    }
+
+    private static byte @NotNull [] deflate(byte @NotNull [] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte @NotNull [] inflate(byte @NotNull [] payload, int offset) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(payload, offset, payload.length - offset);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated payload");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Invalid compressed payload", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static int getCompressionThreshold() {
+        return EngineSource.getConfig().getInt("packetCompressionThreshold", 1024);
+    }
+}
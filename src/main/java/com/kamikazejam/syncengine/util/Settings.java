@@ -2,4 +2,5 @@ package com.kamikazejam.syncengine.util;
 
 public class Settings {
     public static final long HANDSHAKE_TIMEOUT_SEC = 5;
+    public static final long SWAP_PAYLOAD_TTL_SEC = 10;
 }
@@ -4,12 +4,16 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.*;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class ThreadSafeFileHandler {
@@ -26,6 +30,65 @@ public class ThreadSafeFileHandler {
         }
     }
 
+    /**
+     * Reads a file without blocking the calling thread, using an {@link AsynchronousFileChannel}.
+     * Writes replace the file atomically (see {@link #writeFile(Path, String)}), so an open channel always reads
+     *  one complete version of the file, without taking the read lock.
+     * @return A future with the file contents, or null if the file does not exist
+     */
+    public static @NotNull CompletableFuture<@Nullable String> readFileAsync(@NotNull Path path, @NotNull ExecutorService executor) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        if (!Files.exists(path)) {
+            future.complete(null);
+            return future;
+        }
+
+        try {
+            AsynchronousFileChannel channel = AsynchronousFileChannel.open(path, Set.of(StandardOpenOption.READ), executor);
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                channel.close();
+                throw new IOException("File too large to read: " + path);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            readFully(channel, buffer, future);
+        } catch (NoSuchFileException e) {
+            // Deleted since we checked
+            future.complete(null);
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    // Keeps reading until the buffer is full (or EOF), then completes the future with the decoded contents
+    private static void readFully(@NotNull AsynchronousFileChannel channel, @NotNull ByteBuffer buffer, @NotNull CompletableFuture<String> future) {
+        channel.read(buffer, buffer.position(), null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer read, Void attachment) {
+                if (read >= 0 && buffer.hasRemaining()) {
+                    readFully(channel, buffer, future);
+                    return;
+                }
+                closeQuietly(channel);
+                buffer.flip();
+                future.complete(StandardCharsets.UTF_8.decode(buffer).toString());
+            }
+
+            @Override
+            public void failed(Throwable t, Void attachment) {
+                closeQuietly(channel);
+                future.completeExceptionally(t);
+            }
+        });
+    }
+
+    private static void closeQuietly(@NotNull AsynchronousFileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+    }
+
     @SuppressWarnings("ResultOfMethodCallIgnored")
     public static void writeFile(@NotNull Path path, @NotNull String content) throws IOException {
         ReentrantReadWriteLock.WriteLock lock = getLock(path.toString()).writeLock();